@@ -0,0 +1,136 @@
+package io.quarkus.tensorflow;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sheds detections that would not complete within the latency target, so an overloaded node fails fast with 503
+ * instead of building up an unbounded backlog. The expected latency of a new request is estimated from the number of
+ * detections already in flight, the number running in parallel and a moving average of recent detection times.
+ */
+@ApplicationScoped
+public class AdmissionController {
+
+    // Weight of the latest detection time in the moving average
+    private static final double SMOOTHING = 0.2;
+
+    @ConfigProperty(name = "detection.admission.latency-target-millis", defaultValue = "0")
+    long latencyTargetMillis;
+
+    @ConfigProperty(name = "detection.admission.max-queue-depth", defaultValue = "0")
+    int maxQueueDepth;
+
+    @Inject
+    InferenceExecutor inferenceExecutor;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private double averageMillis; // guarded by this
+
+    private Counter accepted;
+    private Counter shed;
+
+    @PostConstruct
+    void registerMetrics() {
+        this.accepted = metricRegistry.counter(Metadata.builder()
+                .withName("admission.accepted")
+                .withDescription("Detections admitted")
+                .withType(MetricType.COUNTER)
+                .build());
+        this.shed = metricRegistry.counter(Metadata.builder()
+                .withName("admission.shed")
+                .withDescription("Detections rejected with 503 because the node is saturated")
+                .withType(MetricType.COUNTER)
+                .build());
+        metricRegistry.register(Metadata.builder()
+                .withName("admission.in-flight")
+                .withDescription("Detections admitted and not yet completed")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) inFlight::get);
+        metricRegistry.register(Metadata.builder()
+                .withName("admission.estimated-wait")
+                .withDescription("Estimated time a new detection would wait before it starts")
+                .withType(MetricType.GAUGE)
+                .withUnit(MetricUnits.MILLISECONDS)
+                .build(), (Gauge<Long>) this::estimatedWaitMillis);
+    }
+
+    /**
+     * Admit a detection unless the backlog is too deep or too slow. An admitted detection must be reported with
+     * {@link #complete(long)} once it has run, successfully or not, or with {@link #cancel()} if it never ran.
+     * @return Whether the detection may proceed
+     */
+    public boolean tryAdmit() {
+        while (true) {
+            int current = inFlight.get();
+            int queued = current - inferenceExecutor.getThreads();
+            boolean tooDeep = maxQueueDepth > 0 && queued >= maxQueueDepth;
+            boolean tooSlow = latencyTargetMillis > 0
+                    && estimatedWaitMillis(current) + averageMillis() > latencyTargetMillis;
+            if (tooDeep || tooSlow) {
+                shed.inc();
+                return false;
+            }
+            // Only admit against the count that was checked, so concurrent callers cannot overshoot the limits
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.inc();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} taken when the detection started running
+     */
+    public void complete(long startNanos) {
+        inFlight.decrementAndGet();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        synchronized (this) {
+            averageMillis = averageMillis == 0 ? millis : averageMillis + SMOOTHING * (millis - averageMillis);
+        }
+    }
+
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Seconds a shed client should wait before retrying, at least 1.
+     */
+    public long retryAfterSeconds() {
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(estimatedWaitMillis() + 999));
+    }
+
+    private synchronized long averageMillis() {
+        return (long) averageMillis;
+    }
+
+    /**
+     * Time until a new detection would start: the detections queued ahead of it, drained by the inference threads
+     * at the average detection time.
+     */
+    public long estimatedWaitMillis() {
+        return estimatedWaitMillis(inFlight.get());
+    }
+
+    private long estimatedWaitMillis(int inFlight) {
+        int threads = Math.max(1, inferenceExecutor.getThreads());
+        int queued = Math.max(0, inFlight - threads + 1);
+        synchronized (this) {
+            return (long) Math.ceil((double) queued / threads * averageMillis);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.quarkus.tensorflow;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the images of a bulk upload one at a time, so only the images being processed are held in memory. Each
+ * source is either a single image or a zip archive, whose entries are read as they are reached.
+ */
+public class BulkImageReader implements Closeable {
+
+    @FunctionalInterface
+    public interface Opener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * A file of the upload.
+     */
+    public static class Source {
+        private final String name;
+        private final String mediaType;
+        private final Opener opener;
+
+        public Source(String name, String mediaType, Opener opener) {
+            this.name = name;
+            this.mediaType = mediaType;
+            this.opener = opener;
+        }
+    }
+
+    private final Iterator<Source> sources;
+    private final long maxImageBytes;
+    private ZipInputStream archive;
+
+    /**
+     * @param sources Files of the upload
+     * @param maxImageBytes Largest image read, larger images and archive entries are reported as errors
+     */
+    public BulkImageReader(List<Source> sources, long maxImageBytes) {
+        this.sources = sources.iterator();
+        this.maxImageBytes = maxImageBytes;
+    }
+
+    public static boolean isArchive(String name, String mediaType) {
+        return (mediaType != null && mediaType.startsWith("application/zip"))
+                || (name != null && name.toLowerCase().endsWith(".zip"));
+    }
+
+    /**
+     * @return The next image, or null when there are no more
+     */
+    public Image next() throws IOException {
+        while (true) {
+            if (archive != null) {
+                ZipEntry entry;
+                while ((entry = archive.getNextEntry()) != null) {
+                    if (!entry.isDirectory()) {
+                        return read(entry.getName(), archive);
+                    }
+                }
+                archive.close();
+                archive = null;
+            }
+            if (!sources.hasNext()) {
+                return null;
+            }
+            Source source = sources.next();
+            if (isArchive(source.name, source.mediaType)) {
+                archive = new ZipInputStream(source.opener.open());
+            }
+            else {
+                try (InputStream is = source.opener.open()) {
+                    return read(source.name, is);
+                }
+            }
+        }
+    }
+
+    private Image read(String name, InputStream is) throws IOException {
+        byte[] data = ByteStreams.toByteArray(ByteStreams.limit(is, maxImageBytes + 1));
+        if (data.length > maxImageBytes) {
+            return new Image(name, null);
+        }
+        return new Image(name, data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (archive != null) {
+            archive.close();
+        }
+    }
+
+    public static class Image {
+        private final String name;
+        private final byte[] data;
+
+        private Image(String name, byte[] data) {
+            this.name = name;
+            this.data = data;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The image file, or null if it was too large to read
+         */
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
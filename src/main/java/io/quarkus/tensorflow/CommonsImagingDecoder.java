@@ -0,0 +1,36 @@
+package io.quarkus.tensorflow;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Pure Java decoder for every supported format. Slower than ImageIO for JPEG, but it is the fallback for GIF and for
+ * files the other decoders reject.
+ */
+@ApplicationScoped
+public class CommonsImagingDecoder implements ImageDecoder {
+
+    @Override
+    public int priority() {
+        return 100;
+    }
+
+    @Override
+    public boolean supports(ImageHeader header) {
+        return true;
+    }
+
+    @Override
+    public BufferedImage decode(byte[] data, ImageHeader header, int minLongEdge) throws IOException {
+        try {
+            return Imaging.getBufferedImage(data);
+        }
+        catch (ImageReadException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package io.quarkus.tensorflow;
+
+import org.eclipse.microprofile.metrics.Timer;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+import org.tensorflow.types.UInt8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Collects concurrent detection requests and feeds them to a session as one batch, so a single run of the graph
+ * serves several callers. Images can only be stacked into one [N, H, W, 3] tensor when they share the same height
+ * and width, so each collected batch is split into one run per distinct image shape.
+ *
+ * Batches run on one worker per pooled session. A new batch is only collected once a worker is free, so requests
+ * arriving while all sessions are busy accumulate into larger batches.
+ *
+ * With a maximum batch size of 1, batching is disabled and every image runs directly on the calling thread.
+ */
+public class DetectionBatcher implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(DetectionBatcher.class.getName());
+
+    private static final long CHANNELS = 3;
+
+    // Node fed with the images, and the nodes fetched, in the order the outputs are read
+    public static final String INPUT_NODE = "image_tensor";
+    public static final List<String> OUTPUT_NODES = Collections.unmodifiableList(Arrays.asList(
+            "detection_scores", "detection_classes", "detection_boxes", "num_detections"));
+
+    // Output buffers reused by each thread running the graph
+    private static final ThreadLocal<OutputBuffers> OUTPUT_BUFFERS = ThreadLocal.withInitial(OutputBuffers::new);
+
+    private final SessionPool sessionPool;
+    private final PixelBufferPool pixelBufferPool;
+    private final TensorLeaseManager tensorLeaseManager;
+    private final String[] labels;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final long timeoutNanos;
+    private final Timer inferenceTimer;
+
+    private final BlockingQueue<PendingImage> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private final ExecutorService workers;
+    private final Semaphore idleWorkers;
+    private volatile boolean running = true;
+
+    public DetectionBatcher(SessionPool sessionPool, PixelBufferPool pixelBufferPool,
+                            TensorLeaseManager tensorLeaseManager, String[] labels,
+                            int maxBatchSize, long maxWaitMillis, long timeoutMillis, Timer inferenceTimer) {
+        this.sessionPool = sessionPool;
+        this.pixelBufferPool = pixelBufferPool;
+        this.tensorLeaseManager = tensorLeaseManager;
+        this.labels = labels;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+        this.inferenceTimer = inferenceTimer;
+
+        if (this.maxBatchSize > 1) {
+            AtomicInteger workerCount = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(sessionPool.size(), runnable -> {
+                Thread thread = new Thread(runnable, "detection-batch-" + workerCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            idleWorkers = new Semaphore(sessionPool.size());
+
+            dispatcher = new Thread(this::dispatch, "detection-batcher");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+            LOG.info("Batching up to " + this.maxBatchSize + " images, waiting at most " + maxWaitMillis + "ms");
+        }
+        else {
+            workers = null;
+            idleWorkers = null;
+            dispatcher = null;
+        }
+    }
+
+    /**
+     * Run object detection for one image, possibly together with images submitted concurrently by other threads.
+     * @param pixels Pixel data as consecutive R, G and B bytes, row by row, acquired from the pixel buffer pool. The
+     *               batcher releases it to the pool once it is no longer read, which can be after this method returns
+     *               if it fails or times out while the image is running.
+     * @param height Height of the image in pixels
+     * @param width Width of the image in pixels
+     * @param minScore Detections scoring below this are dropped
+     * @param topK Maximum number of detections to return
+     * @return The detected objects, highest score first
+     */
+    public List<ObjectDetectionResult> detect(ByteBuffer pixels, int height, int width, float minScore, int topK) throws IOException {
+        PendingImage image = new PendingImage(pixels, true, height, width, minScore, topK);
+        if (dispatcher == null) {
+            run(Collections.singletonList(image));
+        }
+        else if (!running) {
+            release(image);
+            throw new IOException("Detection batcher is closed");
+        }
+        else {
+            queue.add(image);
+            // close() may have drained the queue between the check and the add, the image would never run
+            if (!running && queue.remove(image)) {
+                release(image);
+                throw new IOException("Detection batcher is closed");
+            }
+        }
+        try {
+            return image.await(timeoutNanos);
+        }
+        catch (TimeoutException e) {
+            // An image still queued is withdrawn, one already running is left to complete and release on its own
+            if (queue.remove(image)) {
+                release(image);
+            }
+            throw new IOException("Detection did not complete within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos)
+                    + "ms", e);
+        }
+    }
+
+    /**
+     * Run a blank image of the given shape through every session, so TensorFlow allocates and tunes its kernels for
+     * that shape before the first real request has to wait for it.
+     * @param batchSize Number of images stacked into the input, as a batch of that size would be
+     */
+    public void warmup(int height, int width, int batchSize) throws IOException {
+        ByteBuffer pixels = pixelBufferPool.acquire((int) (height * width * CHANNELS));
+        try {
+            // Pooled buffers are reused, the content does not matter for warming up but is cleared anyway
+            while (pixels.hasRemaining()) {
+                pixels.put((byte) 0);
+            }
+            pixels.flip();
+            for (int session = 0; session < sessionPool.size(); session++) {
+                List<PendingImage> images = new ArrayList<>(batchSize);
+                for (int i = 0; i < batchSize; i++) {
+                    images.add(new PendingImage(pixels, false, height, width, 1f, 0));
+                }
+                run(images, sessionPool.lease(session), null);
+                for (PendingImage image : images) {
+                    // run() completes every image before it returns
+                    image.result.join();
+                }
+            }
+        }
+        finally {
+            pixelBufferPool.release(pixels);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            workers.shutdown();
+        }
+        failPending(new IllegalStateException("Detection batcher is closed"));
+    }
+
+    private void dispatch() {
+        List<PendingImage> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                // Wait for a free worker, block for the first image, then keep collecting until the batch is full
+                // or the wait expires
+                idleWorkers.acquire();
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingImage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                boolean firstShape = true;
+                for (List<PendingImage> sameShape : groupByShape(batch)) {
+                    if (!firstShape) {
+                        idleWorkers.acquire();
+                    }
+                    firstShape = false;
+                    submit(new ArrayList<>(sameShape));
+                    // Submitted images belong to their worker, only the rest are failed if interrupted
+                    batch.removeAll(sameShape);
+                }
+            }
+            catch (InterruptedException e) {
+                failAll(batch, new IllegalStateException("Detection batcher is closed"));
+                Thread.currentThread().interrupt();
+                break;
+            }
+            finally {
+                batch.clear();
+            }
+        }
+        failPending(new IllegalStateException("Detection batcher is closed"));
+    }
+
+    private void submit(List<PendingImage> images) {
+        try {
+            workers.execute(() -> {
+                try {
+                    run(images);
+                }
+                finally {
+                    idleWorkers.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            idleWorkers.release();
+            failAll(images, e);
+        }
+    }
+
+    private static Collection<List<PendingImage>> groupByShape(List<PendingImage> batch) {
+        Map<Long, List<PendingImage>> shapes = new LinkedHashMap<>();
+        for (PendingImage image : batch) {
+            long shape = ((long) image.height << 32) | image.width;
+            shapes.computeIfAbsent(shape, key -> new ArrayList<>()).add(image);
+        }
+        return shapes.values();
+    }
+
+    /**
+     * Stack images of identical shape into one input tensor, run the graph once on the least busy session and hand
+     * each image its slice of the outputs. The input and output tensors are closed as soon as the outputs are copied.
+     *
+     * The outputs are written into flat buffers reused by the worker thread. Scores come sorted from highest to
+     * lowest, so each image only reads candidates until the first one below its cutoff, its topK or num_detections.
+     */
+    private void run(List<PendingImage> images) {
+        run(images, sessionPool.lease(), inferenceTimer);
+    }
+
+    /**
+     * @param timer Timer of the session run, null to not time it
+     */
+    private void run(List<PendingImage> images, SessionPool.Lease sessionLease, Timer timer) {
+        ByteBuffer stacked = null;
+        try (SessionPool.Lease lease = sessionLease;
+             TensorLeaseManager.TensorLease tensors = tensorLeaseManager.lease()) {
+            PendingImage first = images.get(0);
+            int batchSize = images.size();
+
+            ByteBuffer byteBuffer;
+            if (batchSize == 1) {
+                byteBuffer = first.pixels.duplicate();
+            }
+            else {
+                stacked = pixelBufferPool.acquire(first.pixels.remaining() * batchSize);
+                for (PendingImage image : images) {
+                    stacked.put(image.pixels.duplicate());
+                }
+                stacked.flip();
+                byteBuffer = stacked;
+            }
+
+            long[] shape = new long[]{batchSize, first.height, first.width, CHANNELS};
+            Tensor<UInt8> input = tensors.create(UInt8.class, shape, byteBuffer);
+            Session.Runner runner = lease.session().runner().feed(INPUT_NODE, input);
+            OUTPUT_NODES.forEach(runner::fetch);
+            List<Tensor<?>> outputs;
+            Timer.Context inferenceTime = timer != null ? timer.time() : null;
+            try {
+                outputs = tensors.adopt(runner.run());
+            }
+            finally {
+                if (inferenceTime != null) {
+                    inferenceTime.stop();
+                }
+            }
+
+            Tensor<Float> scoresT = outputs.get(0).expect(Float.class);
+            Tensor<Float> classesT = outputs.get(1).expect(Float.class);
+            Tensor<Float> boxesT = outputs.get(2).expect(Float.class);
+            Tensor<Float> numDetectionsT = outputs.get(3).expect(Float.class);
+
+            // All these tensors have: batchSize as the first dimension, maxObjects as the second dimension
+            // Boxes will have 4 as the third dimension (2 sets of (x, y) coordinates).
+            int maxObjects = (int) scoresT.shape()[1];
+            OutputBuffers buffers = OUTPUT_BUFFERS.get();
+            buffers.ensureCapacity(batchSize, maxObjects);
+            float[] scores = buffers.write(scoresT, buffers.scores);
+            float[] classes = buffers.write(classesT, buffers.classes);
+            float[] boxes = buffers.write(boxesT, buffers.boxes);
+            float[] numDetections = buffers.write(numDetectionsT, buffers.numDetections);
+
+            for (int i = 0; i < batchSize; i++) {
+                PendingImage image = images.get(i);
+                int count = Math.min((int) numDetections[i], maxObjects);
+                int limit = Math.min(count, image.topK);
+                int offset = i * maxObjects;
+
+                List<ObjectDetectionResult> results = new ArrayList<>();
+                for (int object = offset; object < offset + limit; object++) {
+                    float score = scores[object];
+                    if (score < image.minScore) {
+                        break;
+                    }
+
+                    String label = labels[(int) classes[object] - 1];
+
+                    float y1 = boxes[object * 4];
+                    float x1 = boxes[object * 4 + 1];
+                    float y2 = boxes[object * 4 + 2];
+                    float x2 = boxes[object * 4 + 3];
+
+                    results.add(new ObjectDetectionResult(label, score, x1, y1, x2, y2));
+                }
+                image.result.complete(results);
+            }
+        }
+        catch (NativeMemoryExceededException | RuntimeException e) {
+            failAll(images, e);
+        }
+        finally {
+            if (stacked != null) {
+                pixelBufferPool.release(stacked);
+            }
+            for (PendingImage image : images) {
+                release(image);
+            }
+        }
+    }
+
+    private void failPending(Exception e) {
+        List<PendingImage> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        failAll(pending, e);
+    }
+
+    private void failAll(List<PendingImage> images, Exception e) {
+        for (PendingImage image : images) {
+            image.result.completeExceptionally(e);
+            release(image);
+        }
+    }
+
+    /**
+     * Return the pixels of an image to the pool, once, if they were handed over by {@link #detect}.
+     */
+    private void release(PendingImage image) {
+        if (image.pooled && image.released.compareAndSet(false, true)) {
+            pixelBufferPool.release(image.pixels);
+        }
+    }
+
+    /**
+     * Flat arrays the output tensors are written into, grown as needed and never shrunk.
+     */
+    private static class OutputBuffers {
+        private float[] scores = new float[0];
+        private float[] classes = new float[0];
+        private float[] boxes = new float[0];
+        private float[] numDetections = new float[0];
+
+        private void ensureCapacity(int batchSize, int maxObjects) {
+            int objects = batchSize * maxObjects;
+            if (scores.length < objects) {
+                scores = new float[objects];
+                classes = new float[objects];
+                boxes = new float[objects * 4];
+            }
+            if (numDetections.length < batchSize) {
+                numDetections = new float[batchSize];
+            }
+        }
+
+        private float[] write(Tensor<Float> tensor, float[] dst) {
+            tensor.writeTo(FloatBuffer.wrap(dst));
+            return dst;
+        }
+    }
+
+    private static class PendingImage {
+        private final ByteBuffer pixels;
+        private final boolean pooled;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final int height;
+        private final int width;
+        private final float minScore;
+        private final int topK;
+        private final CompletableFuture<List<ObjectDetectionResult>> result = new CompletableFuture<>();
+
+        private PendingImage(ByteBuffer pixels, boolean pooled, int height, int width, float minScore, int topK) {
+            this.pixels = pixels;
+            this.pooled = pooled;
+            this.height = height;
+            this.width = width;
+            this.minScore = minScore;
+            this.topK = topK;
+        }
+
+        private List<ObjectDetectionResult> await(long timeoutNanos) throws IOException, TimeoutException {
+            try {
+                return result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for detection", e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+}
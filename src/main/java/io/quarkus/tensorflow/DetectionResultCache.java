@@ -0,0 +1,132 @@
+package io.quarkus.tensorflow;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detections cached by the content of the uploaded image, so re-submitting an identical file skips decoding and
+ * inference. Concurrent uploads of the same content share a single detection: the first caller runs it and the
+ * others wait for its result. Failed detections are not cached.
+ *
+ * This uses Caffeine directly rather than @CacheResult, so that the decode and detection exceptions reach the
+ * callers unchanged and the in-flight detection is shared while it runs.
+ */
+@ApplicationScoped
+public class DetectionResultCache {
+
+    @ConfigProperty(name = "detection.result-cache.maximum-size", defaultValue = "0")
+    long maximumSize;
+
+    @ConfigProperty(name = "detection.result-cache.expire-after-write", defaultValue = "10M")
+    Duration expireAfterWrite;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    private AsyncCache<String, ImageDetections> cache;
+
+    @FunctionalInterface
+    public interface Loader {
+        ImageDetections load() throws IOException, MediaTypeException;
+    }
+
+    @PostConstruct
+    void createCache() {
+        if (maximumSize <= 0) {
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite.toNanos(), TimeUnit.NANOSECONDS)
+                .recordStats()
+                .buildAsync();
+
+        metricRegistry.register(Metadata.builder()
+                .withName("result-cache.hits")
+                .withDescription("Detections served from the result cache, including shared in-flight detections")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Long>) () -> cache.synchronous().stats().hitCount());
+        metricRegistry.register(Metadata.builder()
+                .withName("result-cache.misses")
+                .withDescription("Detections that had to run because the content was not cached")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Long>) () -> cache.synchronous().stats().missCount());
+        metricRegistry.register(Metadata.builder()
+                .withName("result-cache.size")
+                .withDescription("Cached detections")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Long>) () -> cache.synchronous().estimatedSize());
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Hash of the raw image used as the cache key.
+     */
+    public static String contentHash(byte[] rawData) {
+        return Hashing.murmur3_128().hashBytes(rawData).toString() + ":" + rawData.length;
+    }
+
+    /**
+     * Get the cached detections for the content hash, or run the loader on the calling thread if there are none and
+     * no other thread is already running it.
+     */
+    public ImageDetections get(String contentHash, Loader loader) throws IOException, MediaTypeException {
+        if (cache == null) {
+            return loader.load();
+        }
+
+        CompletableFuture<ImageDetections> loading = new CompletableFuture<>();
+        CompletableFuture<ImageDetections> cached = cache.get(contentHash, (key, executor) -> loading);
+        if (cached == loading) {
+            try {
+                loading.complete(loader.load());
+            }
+            catch (IOException | MediaTypeException | RuntimeException | Error e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return await(cached);
+    }
+
+    private static ImageDetections await(CompletableFuture<ImageDetections> future) throws IOException, MediaTypeException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a shared detection", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof MediaTypeException) {
+                throw (MediaTypeException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package io.quarkus.tensorflow;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a continuous camera stream into JPEG frames. Two framings are supported: MJPEG as sent by IP cameras and
+ * ffmpeg, a multipart/x-mixed-replace body with one JPEG per part, and a plain sequence of JPEGs each preceded by its
+ * length as a 4 byte big endian int.
+ */
+public abstract class FrameStreamReader {
+
+    public static final String MJPEG = "multipart/x-mixed-replace";
+    public static final String LENGTH_PREFIXED = "application/x-jpeg-sequence";
+
+    protected final int maxFrameBytes;
+
+    protected FrameStreamReader(int maxFrameBytes) {
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    /**
+     * @param mediaType Content type of the stream
+     * @param boundary Boundary parameter of the content type, for MJPEG
+     */
+    public static FrameStreamReader create(String mediaType, String boundary, InputStream is, int maxFrameBytes)
+            throws IOException {
+        if (mediaType.equalsIgnoreCase(MJPEG)) {
+            if (boundary == null || boundary.isEmpty()) {
+                throw new IOException("MJPEG stream without a boundary");
+            }
+            return new Multipart(new BufferedInputStream(is), boundary, maxFrameBytes);
+        }
+        return new LengthPrefixed(new DataInputStream(new BufferedInputStream(is)), maxFrameBytes);
+    }
+
+    /**
+     * @return The next frame, or null at the end of the stream
+     */
+    public abstract byte[] next() throws IOException;
+
+    protected void checkSize(long size) throws IOException {
+        if (size > maxFrameBytes) {
+            throw new IOException("Frame of " + size + " bytes exceeds the maximum of " + maxFrameBytes);
+        }
+    }
+
+    private static class LengthPrefixed extends FrameStreamReader {
+        private final DataInputStream in;
+
+        private LengthPrefixed(DataInputStream in, int maxFrameBytes) {
+            super(maxFrameBytes);
+            this.in = in;
+        }
+
+        @Override
+        public byte[] next() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            }
+            catch (EOFException e) {
+                return null;
+            }
+            if (length < 0) {
+                throw new IOException("Negative frame length " + length);
+            }
+            checkSize(length);
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+            return frame;
+        }
+    }
+
+    /**
+     * Parts are separated by a line holding the boundary. A part's headers are followed by an empty line and the
+     * JPEG, whose length is taken from Content-Length when the camera sends it and otherwise found by scanning for
+     * the next boundary.
+     */
+    private static class Multipart extends FrameStreamReader {
+        private final InputStream in;
+        private final String boundary;
+        private final byte[] delimiter;
+        // Whether the boundary starting the next part has already been consumed while scanning the previous one
+        private boolean atBoundary;
+        private boolean finished;
+
+        private Multipart(InputStream in, String boundary, int maxFrameBytes) {
+            super(maxFrameBytes);
+            this.in = in;
+            this.boundary = boundary.startsWith("--") ? boundary.substring(2) : boundary;
+            this.delimiter = ("\r\n--" + this.boundary).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public byte[] next() throws IOException {
+            while (!finished) {
+                // The rest of the boundary line, "--" after the last part
+                String rest = atBoundary ? readLine() : skipToBoundary();
+                atBoundary = false;
+                if (rest == null || rest.startsWith("--")) {
+                    finished = true;
+                    return null;
+                }
+
+                long contentLength = readHeaders();
+                if (contentLength >= 0) {
+                    checkSize(contentLength);
+                    byte[] frame = new byte[(int) contentLength];
+                    new DataInputStream(in).readFully(frame);
+                    return frame;
+                }
+                byte[] frame = readToBoundary();
+                if (frame.length > 0) {
+                    return frame;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Skip the preamble, or the line break after a part, up to the next boundary line.
+         * @return The rest of the boundary line, or null at the end of the stream
+         */
+        private String skipToBoundary() throws IOException {
+            String line;
+            while ((line = readLine()) != null) {
+                String marker = line.startsWith("--") ? line.substring(2) : line;
+                if (marker.startsWith(boundary)) {
+                    return marker.substring(boundary.length());
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return Content-Length of the part, or -1 if it has none
+         */
+        private long readHeaders() throws IOException {
+            long contentLength = -1;
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                    try {
+                        contentLength = Long.parseLong(line.substring(colon + 1).trim());
+                    }
+                    catch (NumberFormatException e) {
+                        // Scan for the boundary instead
+                    }
+                }
+            }
+            return contentLength;
+        }
+
+        private byte[] readToBoundary() throws IOException {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(64 * 1024);
+            int matched = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == (delimiter[matched] & 0xFF)) {
+                    matched++;
+                    if (matched == delimiter.length) {
+                        atBoundary = true;
+                        return frame.toByteArray();
+                    }
+                    continue;
+                }
+                if (matched > 0) {
+                    // The delimiter starts with CR, which cannot recur inside it, so a mismatch restarts the match
+                    frame.write(delimiter, 0, matched);
+                    matched = b == delimiter[0] ? 1 : 0;
+                    if (matched == 1) {
+                        continue;
+                    }
+                }
+                frame.write(b);
+                checkSize(frame.size());
+            }
+            finished = true;
+            return frame.toByteArray();
+        }
+
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                if (line.size() >= 8192) {
+                    throw new IOException("Multipart header line too long");
+                }
+                line.write(b);
+            }
+            if (b == -1 && line.size() == 0) {
+                return null;
+            }
+            String text = new String(line.toByteArray(), StandardCharsets.US_ASCII);
+            return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+        }
+    }
+}
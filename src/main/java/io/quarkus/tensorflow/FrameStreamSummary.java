@@ -0,0 +1,51 @@
+package io.quarkus.tensorflow;
+
+/**
+ * Counts of a camera stream, returned once the stream has ended.
+ */
+public class FrameStreamSummary {
+
+    private String name;
+    private long received;
+    private long detected;
+    private long dropped;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    public void setReceived(long received) {
+        this.received = received;
+    }
+
+    /**
+     * Frames run through detection and published on the dashboard stream.
+     */
+    public long getDetected() {
+        return detected;
+    }
+
+    public void setDetected(long detected) {
+        this.detected = detected;
+    }
+
+    /**
+     * Frames skipped because they arrived faster than the target FPS, while the previous frame was still being
+     * detected, or while the node was saturated.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void setDropped(long dropped) {
+        this.dropped = dropped;
+    }
+}
@@ -0,0 +1,112 @@
+package io.quarkus.tensorflow;
+
+import java.util.List;
+
+/**
+ * Result of running the same image through the original and the optimized graph of a model, returned by
+ * /object/models/{model}/compare.
+ */
+public class GraphComparison {
+
+    private String model;
+    private boolean identical;
+    private float maxDifference;
+    private GraphRun original;
+    private GraphRun optimized;
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    /**
+     * Whether both graphs detected the same labels in the same order, with scores and boxes within the tolerance.
+     */
+    public boolean isIdentical() {
+        return identical;
+    }
+
+    public void setIdentical(boolean identical) {
+        this.identical = identical;
+    }
+
+    /**
+     * Largest difference of a score or box coordinate between the graphs, over the detections both found.
+     */
+    public float getMaxDifference() {
+        return maxDifference;
+    }
+
+    public void setMaxDifference(float maxDifference) {
+        this.maxDifference = maxDifference;
+    }
+
+    public GraphRun getOriginal() {
+        return original;
+    }
+
+    public void setOriginal(GraphRun original) {
+        this.original = original;
+    }
+
+    public GraphRun getOptimized() {
+        return optimized;
+    }
+
+    public void setOptimized(GraphRun optimized) {
+        this.optimized = optimized;
+    }
+
+    /**
+     * Size, load cost and latency of one of the graphs.
+     */
+    public static class GraphRun {
+        private int graphNodes;
+        private long graphBytes;
+        private long loadMillis;
+        private long loadPeakHeapBytes;
+        private double medianMillis;
+        private List<ObjectDetectionResult> results;
+
+        static GraphRun of(LoadedModel model, double medianMillis, List<ObjectDetectionResult> results) {
+            GraphRun run = new GraphRun();
+            run.graphNodes = model.getGraphNodes();
+            run.graphBytes = model.getGraphBytes();
+            run.loadMillis = model.getLoadMillis();
+            run.loadPeakHeapBytes = model.getLoadPeakHeapBytes();
+            run.medianMillis = medianMillis;
+            run.results = results;
+            return run;
+        }
+
+        public int getGraphNodes() {
+            return graphNodes;
+        }
+
+        public long getGraphBytes() {
+            return graphBytes;
+        }
+
+        public long getLoadMillis() {
+            return loadMillis;
+        }
+
+        public long getLoadPeakHeapBytes() {
+            return loadPeakHeapBytes;
+        }
+
+        /**
+         * Median time of the timed runs, decoding and resizing the image included.
+         */
+        public double getMedianMillis() {
+            return medianMillis;
+        }
+
+        public List<ObjectDetectionResult> getResults() {
+            return results;
+        }
+    }
+}
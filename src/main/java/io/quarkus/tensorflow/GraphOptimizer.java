@@ -0,0 +1,177 @@
+package io.quarkus.tensorflow;
+
+import org.tensorflow.framework.GraphDef;
+import org.tensorflow.framework.NodeDef;
+
+import java.util.*;
+
+/**
+ * Rewrites a GraphDef for inference before it is imported, so TensorFlow neither holds nor sets up nodes that can
+ * never run. The passes are:
+ * <ul>
+ *     <li>Debug ops are removed. CheckNumerics, Print, StopGradient and PreventGradient pass their first input
+ *     through, so their consumers are rewired to that input. Assert and PrintV2 have no outputs and are only reached
+ *     through control dependencies, which are dropped.</li>
+ *     <li>Nodes not reachable from the fetched outputs, through data or control inputs, are pruned. This drops the
+ *     training ops, savers and summaries left in the saved model.</li>
+ *     <li>Identity nodes that are the only reader of a constant, such as the "read" nodes of the variables of a
+ *     frozen graph, are folded into the constant, and the graph is pruned again. Folding of computed values is left
+ *     to TensorFlow's own graph optimizer, which runs when the sessions are created.</li>
+ * </ul>
+ * The function library and versions of the graph are kept as they are.
+ */
+public class GraphOptimizer {
+
+    private static final Set<String> PASS_THROUGH_OPS = new HashSet<>(Arrays.asList(
+            "CheckNumerics", "Print", "StopGradient", "PreventGradient"));
+    private static final Set<String> SINK_OPS = new HashSet<>(Arrays.asList("Assert", "PrintV2"));
+
+    private GraphOptimizer() {
+    }
+
+    /**
+     * @param graphDef Graph as read from the saved model
+     * @param outputs Names of the nodes fetched, everything they do not depend on is pruned
+     */
+    public static GraphDef optimize(GraphDef graphDef, Collection<String> outputs) {
+        Map<String, NodeDef> nodes = new LinkedHashMap<>();
+        for (NodeDef node : graphDef.getNodeList()) {
+            nodes.put(node.getName(), node);
+        }
+
+        removeDebugOps(nodes);
+        // Prune before folding too, so readers that are never run do not stop a constant from being folded
+        prune(nodes, outputs);
+        foldConstantIdentities(nodes);
+        prune(nodes, outputs);
+
+        return graphDef.toBuilder().clearNode().addAllNode(nodes.values()).build();
+    }
+
+    private static void removeDebugOps(Map<String, NodeDef> nodes) {
+        // Removed node names mapped to the input that replaces them, null for nodes without outputs
+        Map<String, String> replacements = new HashMap<>();
+        for (NodeDef node : nodes.values()) {
+            if (SINK_OPS.contains(node.getOp())) {
+                replacements.put(node.getName(), null);
+            }
+            else if (PASS_THROUGH_OPS.contains(node.getOp()) && node.getInputCount() > 0
+                    && !node.getInput(0).startsWith("^")) {
+                replacements.put(node.getName(), node.getInput(0));
+            }
+        }
+        if (replacements.isEmpty()) {
+            return;
+        }
+
+        for (Iterator<Map.Entry<String, NodeDef>> it = nodes.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, NodeDef> entry = it.next();
+            if (replacements.containsKey(entry.getKey())) {
+                it.remove();
+                continue;
+            }
+            NodeDef node = entry.getValue();
+            List<String> inputs = new ArrayList<>(node.getInputCount());
+            boolean changed = false;
+            for (String input : node.getInputList()) {
+                String rewired = rewire(input, replacements);
+                if (rewired == null) {
+                    changed = true;
+                    continue;
+                }
+                changed |= !input.equals(rewired);
+                // Rewiring can duplicate a control dependency, or make it redundant with a data input
+                if (!rewired.startsWith("^") || !dependsOn(inputs, nodeName(rewired))) {
+                    inputs.add(rewired);
+                }
+            }
+            if (changed) {
+                entry.setValue(node.toBuilder().clearInput().addAllInput(inputs).build());
+            }
+        }
+    }
+
+    private static boolean dependsOn(List<String> inputs, String name) {
+        for (String input : inputs) {
+            if (nodeName(input).equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The input after following removed nodes to the one they passed through, null if it is dropped
+     */
+    private static String rewire(String input, Map<String, String> replacements) {
+        boolean control = input.startsWith("^");
+        String current = input;
+        while (replacements.containsKey(nodeName(current))) {
+            String replacement = replacements.get(nodeName(current));
+            if (replacement == null) {
+                return null;
+            }
+            // Pass-through ops only have output 0, which is their first input
+            current = replacement;
+        }
+        if (control && !current.startsWith("^")) {
+            return "^" + nodeName(current);
+        }
+        return current;
+    }
+
+    private static void foldConstantIdentities(Map<String, NodeDef> nodes) {
+        Map<String, Integer> consumers = new HashMap<>();
+        for (NodeDef node : nodes.values()) {
+            for (String input : node.getInputList()) {
+                consumers.merge(nodeName(input), 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<String, NodeDef> entry : nodes.entrySet()) {
+            NodeDef node = entry.getValue();
+            if (!node.getOp().equals("Identity") || node.getInputCount() != 1) {
+                continue;
+            }
+            String input = node.getInput(0);
+            NodeDef source = nodes.get(nodeName(input));
+            if (source == null || !source.getOp().equals("Const") || source.getInputCount() > 0
+                    || input.startsWith("^") || (input.contains(":") && !input.endsWith(":0"))
+                    || consumers.get(source.getName()) != 1) {
+                // Only fold a constant read by this node alone, so its value is not held twice
+                continue;
+            }
+            entry.setValue(source.toBuilder()
+                    .setName(node.getName())
+                    .setDevice(node.getDevice())
+                    .build());
+        }
+    }
+
+    private static void prune(Map<String, NodeDef> nodes, Collection<String> outputs) {
+        Set<String> reachable = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        for (String output : outputs) {
+            pending.add(nodeName(output));
+        }
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            NodeDef node = nodes.get(name);
+            if (node == null || !reachable.add(name)) {
+                continue;
+            }
+            for (String input : node.getInputList()) {
+                pending.add(nodeName(input));
+            }
+        }
+        nodes.keySet().retainAll(reachable);
+    }
+
+    /**
+     * @param input Input reference as NAME, NAME:OUTPUT or ^NAME for a control dependency
+     */
+    private static String nodeName(String input) {
+        int start = input.startsWith("^") ? 1 : 0;
+        int colon = input.lastIndexOf(':');
+        return colon > start ? input.substring(start, colon) : input.substring(start);
+    }
+}
@@ -0,0 +1,32 @@
+package io.quarkus.tensorflow;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Decodes uploaded image files into pixels. Implementations are CDI beans and are tried by {@link ImageDecoders} in
+ * order of priority until one of them succeeds, so a fast decoder for common formats can sit in front of a slower
+ * one that handles everything else.
+ */
+public interface ImageDecoder {
+
+    /**
+     * Decoders with a lower priority value are tried first.
+     */
+    int priority();
+
+    /**
+     * Whether this decoder should be tried for an image with the given header.
+     */
+    boolean supports(ImageHeader header);
+
+    /**
+     * Decode the image.
+     * @param data Raw image file
+     * @param header Header previously read from data
+     * @param minLongEdge If greater than 0, the decoder may subsample the image while decoding as long as its long
+     *                    edge stays at or above this length. Decoders are free to ignore it.
+     * @throws IOException If the image could not be decoded, in which case the next decoder is tried
+     */
+    BufferedImage decode(byte[] data, ImageHeader header, int minLongEdge) throws IOException;
+}
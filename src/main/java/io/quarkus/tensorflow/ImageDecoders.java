@@ -0,0 +1,60 @@
+package io.quarkus.tensorflow;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Chain of all {@link ImageDecoder} beans, tried in order of priority.
+ */
+@ApplicationScoped
+public class ImageDecoders {
+    private static final Logger LOG = Logger.getLogger(ImageDecoders.class.getName());
+
+    @Inject
+    @Any
+    Instance<ImageDecoder> decoderBeans;
+
+    private List<ImageDecoder> decoders;
+
+    @PostConstruct
+    void sortDecoders() {
+        List<ImageDecoder> sorted = new ArrayList<>();
+        decoderBeans.forEach(sorted::add);
+        sorted.sort(Comparator.comparingInt(ImageDecoder::priority));
+        this.decoders = sorted;
+    }
+
+    /**
+     * Decode the image with the first decoder that succeeds.
+     * @see ImageDecoder#decode(byte[], ImageHeader, int)
+     */
+    public BufferedImage decode(byte[] data, ImageHeader header, int minLongEdge) throws IOException {
+        IOException failure = null;
+        for (ImageDecoder decoder : decoders) {
+            if (!decoder.supports(header)) {
+                continue;
+            }
+            try {
+                BufferedImage img = decoder.decode(data, header, minLongEdge);
+                if (img != null) {
+                    return img;
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                LOG.log(Level.FINE, decoder.getClass().getSimpleName() + " could not decode " + header.getFormat(), e);
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+        }
+        throw failure != null ? failure : new IOException("No decoder for " + header.getFormat());
+    }
+}
@@ -0,0 +1,66 @@
+package io.quarkus.tensorflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Detections for one image together with the image metadata reported in the result. Results are sorted from the
+ * highest score down, so they can be cut at any threshold after the fact.
+ */
+public class ImageDetections {
+
+    private final String mediaType;
+    private final int width;
+    private final int height;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final List<ObjectDetectionResult> results;
+
+    public ImageDetections(String mediaType, int width, int height, int inputWidth, int inputHeight,
+                           List<ObjectDetectionResult> results) {
+        this.mediaType = mediaType;
+        this.width = width;
+        this.height = height;
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    public List<ObjectDetectionResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @param minScore Results scoring below this are dropped
+     * @param topK Maximum number of results
+     * @return A new list with the highest scoring results
+     */
+    public List<ObjectDetectionResult> getResults(float minScore, int topK) {
+        int count = 0;
+        while (count < results.size() && count < topK && results.get(count).getScore() >= minScore) {
+            count++;
+        }
+        return new ArrayList<>(results.subList(0, count));
+    }
+}
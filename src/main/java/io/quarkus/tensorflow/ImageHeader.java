@@ -0,0 +1,109 @@
+package io.quarkus.tensorflow;
+
+import java.io.IOException;
+
+/**
+ * Format and dimensions of an uploaded image, read from the first bytes of the file without decoding any pixels.
+ */
+public class ImageHeader {
+
+    public static final String JPEG = "JPEG";
+    public static final String PNG = "PNG";
+    public static final String GIF = "GIF";
+
+    private final String format;
+    private final String mediaType;
+    private final int width;
+    private final int height;
+
+    public ImageHeader(String format, String mediaType, int width, int height) {
+        this.format = format;
+        this.mediaType = mediaType;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Identify the image format from its signature and read the width and height from its header.
+     * @param data Raw image file
+     * @throws MediaTypeException If the data is not a JPEG, PNG or GIF image
+     * @throws IOException If the header is truncated or malformed
+     */
+    public static ImageHeader read(byte[] data) throws IOException, MediaTypeException {
+        if (data.length >= 3 && unsigned(data, 0) == 0xFF && unsigned(data, 1) == 0xD8 && unsigned(data, 2) == 0xFF) {
+            return readJpeg(data);
+        }
+        if (data.length >= 24 && unsigned(data, 0) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            // The IHDR chunk always comes first: 8 byte signature, 4 byte length, 4 byte type, then width and height
+            return new ImageHeader(PNG, "image/png", bigEndianInt(data, 16), bigEndianInt(data, 20));
+        }
+        if (data.length >= 10 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F' && data[3] == '8') {
+            // Logical screen width and height follow the 6 byte signature, little endian
+            int width = unsigned(data, 6) | unsigned(data, 7) << 8;
+            int height = unsigned(data, 8) | unsigned(data, 9) << 8;
+            return new ImageHeader(GIF, "image/gif", width, height);
+        }
+        throw new MediaTypeException("Format type is unsupported for the MediaType!");
+    }
+
+    /**
+     * Walk the JPEG marker segments up to the first start of frame (SOFn) segment, which holds the dimensions.
+     */
+    private static ImageHeader readJpeg(byte[] data) throws IOException {
+        int offset = 2;
+        while (offset + 4 <= data.length) {
+            if (unsigned(data, offset) != 0xFF) {
+                throw new IOException("Malformed JPEG marker at offset " + offset);
+            }
+            int marker = unsigned(data, offset + 1);
+            if (marker == 0xFF) {
+                // Fill byte before a marker
+                offset++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                // Standalone markers without a length
+                offset += 2;
+                continue;
+            }
+            int length = unsigned(data, offset + 2) << 8 | unsigned(data, offset + 3);
+            boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (startOfFrame) {
+                if (offset + 9 > data.length) {
+                    break;
+                }
+                int height = unsigned(data, offset + 5) << 8 | unsigned(data, offset + 6);
+                int width = unsigned(data, offset + 7) << 8 | unsigned(data, offset + 8);
+                return new ImageHeader(JPEG, "image/jpeg", width, height);
+            }
+            offset += 2 + length;
+        }
+        throw new IOException("JPEG frame header not found");
+    }
+
+    private static int unsigned(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    private static int bigEndianInt(byte[] data, int offset) {
+        return unsigned(data, offset) << 24 | unsigned(data, offset + 1) << 16
+                | unsigned(data, offset + 2) << 8 | unsigned(data, offset + 3);
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,65 @@
+package io.quarkus.tensorflow;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Decodes JPEG and PNG images with the JDK's ImageIO readers. The JPEG reader is backed by native libjpeg and is
+ * much faster than the pure Java decoder in commons-imaging. When allowed, large images are subsampled by an integer
+ * factor while decoding, so the full resolution image is never held in memory.
+ */
+@ApplicationScoped
+public class ImageIODecoder implements ImageDecoder {
+
+    @Override
+    public int priority() {
+        return 10;
+    }
+
+    @Override
+    public boolean supports(ImageHeader header) {
+        return ImageHeader.JPEG.equals(header.getFormat()) || ImageHeader.PNG.equals(header.getFormat());
+    }
+
+    @Override
+    public BufferedImage decode(byte[] data, ImageHeader header, int minLongEdge) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(header.getFormat());
+        if (!readers.hasNext()) {
+            throw new IOException("No ImageIO reader for " + header.getFormat());
+        }
+        ImageReader reader = readers.next();
+        // Read from memory, ImageIO would otherwise cache the stream in a temporary file
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            reader.setInput(input, true, true);
+            ImageReadParam param = reader.getDefaultReadParam();
+            int subsampling = subsampling(header, minLongEdge);
+            if (subsampling > 1) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+            return reader.read(0, param);
+        }
+        catch (LinkageError e) {
+            // The native codec is not available, e.g. in a native image
+            throw new IOException("ImageIO " + header.getFormat() + " reader is unavailable", e);
+        }
+        finally {
+            reader.dispose();
+        }
+    }
+
+    private static int subsampling(ImageHeader header, int minLongEdge) {
+        if (minLongEdge <= 0) {
+            return 1;
+        }
+        // Keeping every n-th pixel leaves ceil(longEdge / n) pixels, which is at least minLongEdge
+        return Math.max(1, Math.max(header.getWidth(), header.getHeight()) / minLongEdge);
+    }
+}
@@ -0,0 +1,83 @@
+package io.quarkus.tensorflow;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Downscales decoded images so their long edge fits the maximum model input resolution. The model returns boxes
+ * normalized to [0, 1], so detections on the scaled image are still valid for the original one.
+ */
+public class ImageScaler {
+
+    private final int maxEdge;
+    private final Object interpolation;
+
+    /**
+     * @param maxEdge Maximum length of the long edge in pixels, 0 disables scaling
+     * @param interpolation One of nearest, bilinear or bicubic
+     */
+    public ImageScaler(int maxEdge, String interpolation) {
+        this.maxEdge = Math.max(0, maxEdge);
+        this.interpolation = interpolationHint(interpolation);
+    }
+
+    public int getMaxEdge() {
+        return maxEdge;
+    }
+
+    public BufferedImage fit(BufferedImage img) {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int longEdge = Math.max(width, height);
+        if (maxEdge == 0 || longEdge <= maxEdge) {
+            return img;
+        }
+
+        double scale = (double) maxEdge / longEdge;
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        // Bilinear and bicubic only sample a few neighbours, so large reductions are done in halving steps to
+        // avoid aliasing
+        BufferedImage scaled = img;
+        if (interpolation != RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR) {
+            while (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+                width /= 2;
+                height /= 2;
+                scaled = draw(scaled, width, height);
+            }
+        }
+        if (width != targetWidth || height != targetHeight) {
+            scaled = draw(scaled, targetWidth, targetHeight);
+        }
+        return scaled;
+    }
+
+    private BufferedImage draw(BufferedImage img, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            graphics.drawImage(img, 0, 0, width, height, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static Object interpolationHint(String interpolation) {
+        switch (interpolation.toLowerCase()) {
+            case "nearest":
+                return RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+            case "bilinear":
+                return RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+            case "bicubic":
+                return RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+            default:
+                throw new IllegalArgumentException("Unknown interpolation " + interpolation
+                        + ", expected nearest, bilinear or bicubic");
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package io.quarkus.tensorflow;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploaded images kept for the dashboard, keyed by the UUID returned with the detection result. The bytes are held
+ * off-heap in direct buffers. Entries expire after a fixed time to live and, when the total size exceeds the limit,
+ * the oldest entries are evicted first, whether or not anybody ever fetched them. Eviction runs on every upload and
+ * on a background sweep, so expired images are freed even when no more images are uploaded.
+ */
+@ApplicationScoped
+public class ImageStore {
+
+    @ConfigProperty(name = "detection.image-store.max-mb", defaultValue = "128")
+    long maxMb;
+
+    @ConfigProperty(name = "detection.image-store.ttl-seconds", defaultValue = "60")
+    long ttlSeconds;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    private final Map<String, StoredImage> images = new ConcurrentHashMap<>();
+    // Every entry has the same time to live, so insertion order is also expiry order
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private long maxBytes;
+    private long ttlNanos;
+    private ScheduledExecutorService sweeper;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+
+    @PostConstruct
+    void start() {
+        this.maxBytes = maxMb * 1024 * 1024;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+
+        long sweepSeconds = Math.max(1, ttlSeconds);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "image-store-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::evict, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+
+        this.hits = metricRegistry.counter(counter("image-store.hits", "Stored images found"));
+        this.misses = metricRegistry.counter(counter("image-store.misses", "Stored images not found or expired"));
+        this.evictions = metricRegistry.counter(counter("image-store.evictions", "Stored images evicted by size or age"));
+        metricRegistry.register(Metadata.builder()
+                .withName("image-store.bytes")
+                .withDescription("Off-heap bytes held by stored images")
+                .withType(MetricType.GAUGE)
+                .withUnit(MetricUnits.BYTES)
+                .build(), (Gauge<Long>) bytes::get);
+        metricRegistry.register(Metadata.builder()
+                .withName("image-store.entries")
+                .withDescription("Stored images")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) images::size);
+    }
+
+    private static Metadata counter(String name, String description) {
+        return Metadata.builder().withName(name).withDescription(description).withType(MetricType.COUNTER).build();
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Copy the image into off-heap memory and store it. Images larger than the whole store are not kept.
+     */
+    public void put(String uuid, byte[] data, String mediaType) {
+        if (data.length > maxBytes) {
+            evictions.inc();
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+
+        StoredImage previous = images.put(uuid, new StoredImage(buffer.asReadOnlyBuffer(), mediaType, System.nanoTime()));
+        if (previous != null) {
+            bytes.addAndGet(-previous.size());
+        }
+        insertionOrder.offer(uuid);
+        bytes.addAndGet(data.length);
+        evict();
+    }
+
+    /**
+     * @return The stored image, or null if it was never stored, has expired or was evicted
+     */
+    public StoredImage get(String uuid) {
+        StoredImage image = uuid != null ? images.get(uuid) : null;
+        if (image == null || isExpired(image, System.nanoTime())) {
+            misses.inc();
+            return null;
+        }
+        hits.inc();
+        return image;
+    }
+
+    private void evict() {
+        long now = System.nanoTime();
+        String oldest;
+        while ((oldest = insertionOrder.peek()) != null) {
+            StoredImage image = images.get(oldest);
+            if (image != null && bytes.get() <= maxBytes && !isExpired(image, now)) {
+                break;
+            }
+            if (insertionOrder.remove(oldest) && image != null && images.remove(oldest, image)) {
+                bytes.addAndGet(-image.size());
+                evictions.inc();
+            }
+        }
+    }
+
+    private boolean isExpired(StoredImage image, long now) {
+        return now - image.storedAt > ttlNanos;
+    }
+
+    public static class StoredImage {
+        private final ByteBuffer data;
+        private final String mediaType;
+        private final long storedAt;
+
+        private StoredImage(ByteBuffer data, String mediaType, long storedAt) {
+            this.data = data;
+            this.mediaType = mediaType;
+            this.storedAt = storedAt;
+        }
+
+        /**
+         * The image bytes as a new read-only view, positioned at the start.
+         */
+        public ByteBuffer getData() {
+            return data.duplicate();
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public int size() {
+            return data.capacity();
+        }
+    }
+}
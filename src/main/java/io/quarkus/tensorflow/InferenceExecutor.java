@@ -0,0 +1,74 @@
+package io.quarkus.tensorflow;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Dedicated, fixed size thread pool for decoding and inference, so slow detections never occupy the HTTP worker
+ * threads. The queue in front of it is bounded: once it is full, new work is rejected with a
+ * {@link RejectedExecutionException} instead of piling up.
+ */
+@ApplicationScoped
+public class InferenceExecutor {
+    private static final Logger LOG = Logger.getLogger(InferenceExecutor.class.getName());
+
+    @ConfigProperty(name = "detection.executor.threads", defaultValue = "4")
+    int threads;
+
+    @ConfigProperty(name = "detection.executor.queue-size", defaultValue = "64")
+    int queueSize;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "inference-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        LOG.info("Inference executor with " + threads + " threads and a queue of " + queueSize);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Run a task on the inference threads.
+     * @return A future completed with the task's result, or failed with a RejectedExecutionException when the queue
+     *         is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.call());
+                }
+                catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+}
@@ -1,11 +1,23 @@
 package io.quarkus.tensorflow;
 
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.eclipse.microprofile.config.ConfigProvider;
 import org.tensorflow.TensorFlow;
 
 import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.jar.JarEntry;
 import java.util.logging.Logger;
 
 /**
@@ -18,6 +30,7 @@ public class LoadTensorFlow {
     private static final Logger LOG = Logger.getLogger(LoadTensorFlow.class.getName());
 
     private static final String JNI_LIBNAME = "tensorflow_jni";
+    private static final String CACHE_DIR_PROPERTY = "tensorflow.native-library-cache";
 
     // These files can be found inside the libtensorflow_jni Maven dependency
     private static final String DARWIN_X86_64_PATH = "org/tensorflow/native/darwin-x86_64/";
@@ -52,16 +65,13 @@ public class LoadTensorFlow {
                     return;
                 }
 
-                // Libraries need to be copied from classpath to tmp directory in order to be loaded from disk
-                Path tmpPath = Files.createTempDirectory("tensorflow_native_libraries-");
-                LOG.info("TensorFlow loading from: " + tmpPath.toFile().getAbsolutePath());
-
-                copy(tmpPath, libPath, frameworkFileName);
-                Path jniFilePath = copy(tmpPath, libPath, jniFileName);
+                // Libraries need to be copied from the classpath to disk in order to be loaded. They are kept in a cache
+                // directory named after their content, so later starts can load them without copying them again
+                Path libDir = extract(libPath, frameworkFileName, jniFileName);
+                LOG.info("TensorFlow loading from: " + libDir.toFile().getAbsolutePath());
 
                 // Load the library from disk
-                System.load(jniFilePath.toFile().getAbsolutePath());
-                tmpPath.toFile().deleteOnExit();
+                System.load(libDir.resolve(jniFileName).toFile().getAbsolutePath());
             }
             catch (IOException e) {
                 e.printStackTrace();
@@ -69,18 +79,96 @@ public class LoadTensorFlow {
         }
     }
 
-    private static Path copy(Path tmpPath, String path, String fileName) throws IOException {
+    /**
+     * Make sure both libraries are in the cache directory for their content, copying them there if needed.
+     * @return The directory holding the libraries
+     */
+    private static Path extract(String libPath, String... fileNames) throws IOException {
+        String cacheDir = ConfigProvider.getConfig().getOptionalValue(CACHE_DIR_PROPERTY, String.class)
+                .orElse(System.getProperty("java.io.tmpdir") + File.separator + "tensorflow-native");
+
+        Hasher hasher = Hashing.sha256().newHasher();
+        long[] sizes = new long[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++) {
+            sizes[i] = fingerprint(libPath + fileNames[i], hasher);
+        }
+        Path libDir = Paths.get(cacheDir, hasher.hash().toString().substring(0, 16));
+
         try {
-            InputStream inputStream = TensorFlow.class.getClassLoader().getResourceAsStream(path + fileName);
-            Path filePath = tmpPath.resolve(fileName);
-            Files.copy(inputStream, filePath, StandardCopyOption.REPLACE_EXISTING);
-            inputStream.close();
+            Files.createDirectories(libDir);
+            for (int i = 0; i < fileNames.length; i++) {
+                Path filePath = libDir.resolve(fileNames[i]);
+                if (sizes[i] >= 0 && Files.isRegularFile(filePath) && Files.size(filePath) == sizes[i]) {
+                    LOG.fine("Reusing cached " + filePath);
+                    continue;
+                }
+                copy(libDir, libPath, fileNames[i]);
+            }
+            return libDir;
+        }
+        catch (IOException e) {
+            // Fall back to a temporary directory if the cache cannot be written
+            LOG.warning("Could not use the native library cache " + libDir + ": " + e);
+            Path tmpPath = Files.createTempDirectory("tensorflow_native_libraries-");
+            tmpPath.toFile().deleteOnExit();
+            for (String fileName : fileNames) {
+                copy(tmpPath, libPath, fileName).toFile().deleteOnExit();
+            }
+            return tmpPath;
+        }
+    }
+
+    /**
+     * Add the content of a library to the hash. Inside a jar the CRC-32 and size of the entry stand for its content,
+     * as they are stored in the jar and need no decompression; otherwise the whole file is hashed.
+     * @return The size of the library, or -1 if it is unknown
+     */
+    private static long fingerprint(String resource, Hasher hasher) throws IOException {
+        URL url = TensorFlow.class.getClassLoader().getResource(resource);
+        if (url == null) {
+            throw new FileNotFoundException(resource);
+        }
+        hasher.putString(resource, StandardCharsets.UTF_8);
+        URLConnection connection = url.openConnection();
+        if (connection instanceof JarURLConnection) {
+            JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+            if (entry.getCrc() >= 0 && entry.getSize() >= 0) {
+                hasher.putLong(entry.getCrc()).putLong(entry.getSize());
+                return entry.getSize();
+            }
+        }
+        try (InputStream inputStream = connection.getInputStream()) {
+            return ByteStreams.copy(inputStream, Funnels.asOutputStream(hasher));
+        }
+    }
+
+    /**
+     * Copy a library into a temporary file next to its final name, then rename it into place. Another JVM starting at
+     * the same time either sees no file or the complete one, never a partial copy.
+     */
+    private static Path copy(Path dir, String path, String fileName) throws IOException {
+        Path filePath = dir.resolve(fileName);
+        Path tmpFilePath = Files.createTempFile(dir, fileName, ".tmp");
+        try (InputStream inputStream = TensorFlow.class.getClassLoader().getResourceAsStream(path + fileName)) {
+            if (inputStream == null) {
+                throw new FileNotFoundException(path + fileName);
+            }
+            Files.copy(inputStream, tmpFilePath, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(tmpFilePath, filePath, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFilePath, filePath, StandardCopyOption.REPLACE_EXISTING);
+            }
             return filePath;
         }
-        catch (Exception e) {
-            LOG.severe("Error copying " + path + fileName + " to " + tmpPath.toFile().getAbsolutePath());
+        catch (IOException e) {
+            LOG.severe("Error copying " + path + fileName + " to " + dir.toFile().getAbsolutePath());
             throw e;
         }
+        finally {
+            Files.deleteIfExists(tmpFilePath);
+        }
     }
 
     private static boolean isLoaded() {
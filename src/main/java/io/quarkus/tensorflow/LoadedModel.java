@@ -0,0 +1,159 @@
+package io.quarkus.tensorflow;
+
+import org.tensorflow.Graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * One version of a named model: its imported graph, the sessions running it and its labels. The model is reference
+ * counted: the registry holds one reference while it is the current version, and every detection holds one while it
+ * runs. Once the registry has swapped in a newer version, the graph and sessions are closed when the last detection
+ * still using this version has completed.
+ */
+public class LoadedModel {
+    private static final Logger LOG = Logger.getLogger(LoadedModel.class.getName());
+
+    private final String name;
+    private final String variant;
+    private final long version;
+    private final Graph graph;
+    private final SessionPool sessionPool;
+    private final DetectionBatcher batcher;
+    private final List<String> sortedLabels;
+    private final boolean optimized;
+    private final int graphNodes;
+    private final long graphBytes;
+    private final long loadMillis;
+    private final long loadPeakHeapBytes;
+    private final long loadResidentBytes;
+    private final long warmupMillis;
+
+    // Starts with the registry's reference
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    LoadedModel(String name, String variant, long version, Graph graph, SessionPool sessionPool,
+                DetectionBatcher batcher, String[] labels, boolean optimized, int graphNodes, long graphBytes,
+                long loadMillis, long loadPeakHeapBytes, long loadResidentBytes, long warmupMillis) {
+        this.name = name;
+        this.variant = variant;
+        this.version = version;
+        this.graph = graph;
+        this.sessionPool = sessionPool;
+        this.batcher = batcher;
+        List<String> sorted = Arrays.stream(labels).filter(Objects::nonNull).collect(Collectors.toList());
+        Collections.sort(sorted);
+        this.sortedLabels = Collections.unmodifiableList(new ArrayList<>(sorted));
+        this.optimized = optimized;
+        this.graphNodes = graphNodes;
+        this.graphBytes = graphBytes;
+        this.loadMillis = loadMillis;
+        this.loadPeakHeapBytes = loadPeakHeapBytes;
+        this.loadResidentBytes = loadResidentBytes;
+        this.warmupMillis = warmupMillis;
+    }
+
+    /**
+     * Take a reference for a detection.
+     * @return False if the model has already been closed
+     */
+    boolean acquire() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * Drop a reference, closing the model when it was the last one.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            LOG.info("Closing model " + getKey() + " version " + version);
+            batcher.close();
+            sessionPool.close();
+            graph.close();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVariant() {
+        return variant;
+    }
+
+    /**
+     * @return Key of the model variant in the registry
+     */
+    public String getKey() {
+        return ModelRegistry.key(name, variant);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public DetectionBatcher getBatcher() {
+        return batcher;
+    }
+
+    public List<String> getSortedLabels() {
+        return sortedLabels;
+    }
+
+    /**
+     * Whether the graph was optimized by {@link GraphOptimizer} before it was imported.
+     */
+    public boolean isOptimized() {
+        return optimized;
+    }
+
+    public int getGraphNodes() {
+        return graphNodes;
+    }
+
+    /**
+     * Size of the serialized graph that was imported.
+     */
+    public long getGraphBytes() {
+        return graphBytes;
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public long getLoadPeakHeapBytes() {
+        return loadPeakHeapBytes;
+    }
+
+    /**
+     * Growth of the resident memory of the process while loading, or -1 if unknown.
+     */
+    public long getLoadResidentBytes() {
+        return loadResidentBytes;
+    }
+
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    /**
+     * Detections holding a reference, not counting the registry's.
+     */
+    public int getInFlight() {
+        return Math.max(0, references.get() - 1);
+    }
+}
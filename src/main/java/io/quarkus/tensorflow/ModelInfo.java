@@ -0,0 +1,197 @@
+package io.quarkus.tensorflow;
+
+import org.eclipse.microprofile.metrics.Snapshot;
+import org.eclipse.microprofile.metrics.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State of a variant of a named model, as listed by /object/models, with what it costs to load and run.
+ */
+public class ModelInfo {
+
+    private String name;
+    private String variant;
+    private boolean ready;
+    private long version;
+    private int inFlight;
+    private boolean optimized;
+    private int graphNodes;
+    private long graphBytes;
+    private long loadMillis;
+    private long loadResidentBytes;
+    private long warmupMillis;
+    private long inferences;
+    private double inferenceMedianMillis;
+    private double inference99thPercentileMillis;
+    private String error;
+
+    /**
+     * @param key Key of the model variant in the registry
+     * @param model Current version of the model, null if it has not loaded
+     * @param error Why the model could not be loaded last time, if it could not
+     * @param inferenceTimer Timer of the model runs
+     */
+    static ModelInfo of(String key, LoadedModel model, String error, Timer inferenceTimer) {
+        ModelInfo info = new ModelInfo();
+        info.setName(ModelRegistry.modelOf(key));
+        info.setVariant(ModelRegistry.variantOf(key));
+        info.setError(error);
+        if (inferenceTimer != null) {
+            Snapshot snapshot = inferenceTimer.getSnapshot();
+            info.setInferences(inferenceTimer.getCount());
+            info.setInferenceMedianMillis(snapshot.getMedian() / TimeUnit.MILLISECONDS.toNanos(1));
+            info.setInference99thPercentileMillis(snapshot.get99thPercentile() / TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        if (model != null) {
+            info.setReady(true);
+            info.setVersion(model.getVersion());
+            info.setInFlight(model.getInFlight());
+            info.setOptimized(model.isOptimized());
+            info.setGraphNodes(model.getGraphNodes());
+            info.setGraphBytes(model.getGraphBytes());
+            info.setLoadMillis(model.getLoadMillis());
+            info.setLoadResidentBytes(model.getLoadResidentBytes());
+            info.setWarmupMillis(model.getWarmupMillis());
+        }
+        return info;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getVariant() {
+        return variant;
+    }
+
+    public void setVariant(String variant) {
+        this.variant = variant;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * Counts the loads of the model since startup, starting at 1.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Detections running on the current version.
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    public boolean isOptimized() {
+        return optimized;
+    }
+
+    public void setOptimized(boolean optimized) {
+        this.optimized = optimized;
+    }
+
+    public int getGraphNodes() {
+        return graphNodes;
+    }
+
+    public void setGraphNodes(int graphNodes) {
+        this.graphNodes = graphNodes;
+    }
+
+    /**
+     * Size of the serialized graph imported, after optimization if enabled.
+     */
+    public long getGraphBytes() {
+        return graphBytes;
+    }
+
+    public void setGraphBytes(long graphBytes) {
+        this.graphBytes = graphBytes;
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public void setLoadMillis(long loadMillis) {
+        this.loadMillis = loadMillis;
+    }
+
+    /**
+     * Growth of the resident memory of the process while loading the model, -1 if unknown.
+     */
+    public long getLoadResidentBytes() {
+        return loadResidentBytes;
+    }
+
+    public void setLoadResidentBytes(long loadResidentBytes) {
+        this.loadResidentBytes = loadResidentBytes;
+    }
+
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    public void setWarmupMillis(long warmupMillis) {
+        this.warmupMillis = warmupMillis;
+    }
+
+    /**
+     * Images run through the model since startup, across its versions.
+     */
+    public long getInferences() {
+        return inferences;
+    }
+
+    public void setInferences(long inferences) {
+        this.inferences = inferences;
+    }
+
+    /**
+     * Median time of the model runs, over the recent ones kept by the timer.
+     */
+    public double getInferenceMedianMillis() {
+        return inferenceMedianMillis;
+    }
+
+    public void setInferenceMedianMillis(double inferenceMedianMillis) {
+        this.inferenceMedianMillis = inferenceMedianMillis;
+    }
+
+    public double getInference99thPercentileMillis() {
+        return inference99thPercentileMillis;
+    }
+
+    public void setInference99thPercentileMillis(double inference99thPercentileMillis) {
+        this.inference99thPercentileMillis = inference99thPercentileMillis;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
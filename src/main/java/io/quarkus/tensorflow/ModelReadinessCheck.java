@@ -0,0 +1,31 @@
+package io.quarkus.tensorflow;
+
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Map;
+
+/**
+ * Reports the node as ready at /health/ready once all models have been loaded in the background, so load
+ * balancers only send detections to nodes that can run them. Models that failed to load are listed by name.
+ */
+@Readiness
+@ApplicationScoped
+public class ModelReadinessCheck implements HealthCheck {
+
+    @Inject
+    ModelRegistry modelRegistry;
+
+    @Override
+    public HealthCheckResponse call() {
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("model").state(modelRegistry.isReady());
+        for (Map.Entry<String, String> failure : modelRegistry.getLoadFailures().entrySet()) {
+            response.withData(failure.getKey(), failure.getValue());
+        }
+        return response.build();
+    }
+}
@@ -0,0 +1,598 @@
+package io.quarkus.tensorflow;
+
+import com.google.common.io.CharStreams;
+import com.google.protobuf.TextFormat;
+import io.quarkus.runtime.StartupEvent;
+import object_detection.protos.StringIntLabelMapOuterClass;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Timer;
+import org.tensorflow.Graph;
+import org.tensorflow.Operation;
+import org.tensorflow.framework.GraphDef;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * The named models this node serves, each a SavedModel with its label map. The built-in model is called default;
+ * more are listed in detection.models, each with detection.model.NAME.saved-model and detection.model.NAME.labels
+ * pointing at files on disk (or at classpath: resources).
+ *
+ * A model can have variants side by side with its original float32 SavedModel, such as an int8 quantized or float16
+ * weight version made offline. They are listed in detection.model.NAME.variants, each with
+ * detection.model.NAME.variant.VARIANT.saved-model, and share the labels of the model. Requests pick a variant or
+ * get the one set by detection.model.NAME.default-variant. Every variant is loaded, served and reported on as a model
+ * of its own, under the key NAME:VARIANT, or just NAME for the float32 one.
+ *
+ * Models are loaded in the background at startup, and the node is ready once all of them are. A model can be reloaded
+ * from its files while it serves requests: the new version is loaded and warmed up next to the old one, then swapped
+ * in atomically. Detections already running finish on the old version, which is closed once the last of them is
+ * done.
+ */
+@ApplicationScoped
+public class ModelRegistry {
+    private static final Logger LOG = Logger.getLogger(ModelRegistry.class.getName());
+
+    public static final String DEFAULT_MODEL = "default";
+    public static final String DEFAULT_VARIANT = "float32";
+
+    private static final String VARIANT_SEPARATOR = ":";
+
+    private static final String DEFAULT_SAVED_MODEL = "classpath:saved_model/saved_model.pb";
+    private static final String DEFAULT_LABELS = "classpath:labels/mscoco_label_map.pbtxt";
+    private static final String CLASSPATH_PREFIX = "classpath:";
+
+    @ConfigProperty(name = "detection.models")
+    Optional<String> additionalModels;
+
+    @ConfigProperty(name = "detection.sessions", defaultValue = "1")
+    int sessionCount;
+
+    @ConfigProperty(name = "detection.session.intra-op-threads", defaultValue = "0")
+    int intraOpThreads;
+
+    @ConfigProperty(name = "detection.session.inter-op-threads", defaultValue = "0")
+    int interOpThreads;
+
+    @ConfigProperty(name = "detection.batch.max-size", defaultValue = "1")
+    int maxBatchSize;
+
+    @ConfigProperty(name = "detection.batch.max-wait-millis", defaultValue = "5")
+    long maxBatchWaitMillis;
+
+    @ConfigProperty(name = "detection.batch.timeout-millis", defaultValue = "30000")
+    long batchTimeoutMillis;
+
+    @ConfigProperty(name = "detection.pixel-buffers.max-retained-mb", defaultValue = "256")
+    long maxRetainedPixelBufferMb;
+
+    @ConfigProperty(name = "detection.graph.optimize", defaultValue = "false")
+    boolean optimizeGraph;
+
+    @ConfigProperty(name = "detection.warmup.resolutions")
+    Optional<String> warmupResolutions;
+
+    @ConfigProperty(name = "detection.warmup.batch-sizes", defaultValue = "1")
+    String warmupBatchSizes;
+
+    @Inject
+    Config config;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Inject
+    TensorLeaseManager tensorLeaseManager;
+
+    private PixelBufferPool pixelBufferPool;
+
+    // Current version of every model variant by key, null until it has loaded
+    private final Map<String, AtomicReference<LoadedModel>> models = new LinkedHashMap<>();
+    // Variant used when a request does not pick one, by model name
+    private final Map<String, String> defaultVariants = new HashMap<>();
+    private final Map<String, Timer> inferenceTimers = new HashMap<>();
+    private final Map<String, Timer> detectionTimers = new HashMap<>();
+    private final Map<String, String> loadFailures = new ConcurrentHashMap<>();
+    // Held while a model variant is reloaded, by key, so concurrent reloads of it load one version after the other
+    private final Map<String, Object> reloadLocks = new HashMap<>();
+    private boolean stopped; // guarded by this
+
+    /**
+     * Create the bean at startup so the models start loading straight away rather than on the first request.
+     */
+    void onStart(@Observes StartupEvent event) {
+        LOG.fine("Model registry created with " + models.keySet());
+    }
+
+    @PostConstruct
+    void start() {
+        this.pixelBufferPool = new PixelBufferPool(maxRetainedPixelBufferMb * 1024 * 1024);
+
+        List<String> names = new ArrayList<>();
+        names.add(DEFAULT_MODEL);
+        names.addAll(split(additionalModels.orElse("")));
+        for (String name : names) {
+            models.put(name, new AtomicReference<>());
+            for (String variant : split(config.getOptionalValue("detection.model." + name + ".variants", String.class)
+                    .orElse(""))) {
+                models.put(key(name, variant), new AtomicReference<>());
+            }
+            String defaultVariant = config.getOptionalValue("detection.model." + name + ".default-variant",
+                    String.class).orElse(DEFAULT_VARIANT);
+            if (!models.containsKey(key(name, defaultVariant))) {
+                throw new IllegalArgumentException("Default variant " + defaultVariant + " of model " + name
+                        + " is not listed in detection.model." + name + ".variants");
+            }
+            defaultVariants.put(name, defaultVariant);
+        }
+        for (String key : models.keySet()) {
+            reloadLocks.put(key, new Object());
+            registerMetrics(key);
+        }
+
+        // Load the models in the background, the readiness check reports when they are done
+        Thread loader = new Thread(() -> {
+            LoadTensorFlow.load();
+            for (String name : models.keySet()) {
+                try {
+                    reload(name);
+                }
+                catch (IOException | RuntimeException | UnsatisfiedLinkError e) {
+                    loadFailures.put(name, e.toString());
+                    LOG.log(Level.SEVERE, "Could not load model " + name, e);
+                }
+            }
+            if (isReady()) {
+                LOG.info("Models ready " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms after JVM start");
+            }
+        }, "model-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private static List<String> split(String names) {
+        List<String> list = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                list.add(name.trim());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return The key of a model variant in the registry
+     */
+    public static String key(String model, String variant) {
+        return DEFAULT_VARIANT.equals(variant) ? model : model + VARIANT_SEPARATOR + variant;
+    }
+
+    static String modelOf(String key) {
+        int separator = key.indexOf(VARIANT_SEPARATOR);
+        return separator < 0 ? key : key.substring(0, separator);
+    }
+
+    static String variantOf(String key) {
+        int separator = key.indexOf(VARIANT_SEPARATOR);
+        return separator < 0 ? DEFAULT_VARIANT : key.substring(separator + 1);
+    }
+
+    /**
+     * @param variant Variant picked by the request, null or empty for the model's default one
+     * @return The key of the model variant, or null if the model or variant is unknown
+     */
+    public String resolve(String model, String variant) {
+        if (variant == null || variant.isEmpty()) {
+            variant = defaultVariants.get(model);
+            if (variant == null) {
+                return null;
+            }
+        }
+        String key = key(model, variant);
+        return models.containsKey(key) ? key : null;
+    }
+
+    private void registerMetrics(String name) {
+        Tag[] tags = {new Tag("model", modelOf(name)), new Tag("variant", variantOf(name))};
+        registerGauge("model.version", "Version of the model in use, counting loads since startup",
+                MetricUnits.NONE, name, LoadedModel::getVersion, tags);
+        registerGauge("model.in-flight", "Detections running on the current version of the model",
+                MetricUnits.NONE, name, LoadedModel::getInFlight, tags);
+        registerGauge("model.load-time", "Time taken to load the model and create the sessions, -1 until loaded",
+                MetricUnits.MILLISECONDS, name, LoadedModel::getLoadMillis, tags);
+        registerGauge("model.load-peak-heap", "Peak heap used while loading the model, -1 until loaded",
+                MetricUnits.BYTES, name, LoadedModel::getLoadPeakHeapBytes, tags);
+        registerGauge("model.graph-nodes", "Nodes of the imported graph, after optimization if enabled",
+                MetricUnits.NONE, name, LoadedModel::getGraphNodes, tags);
+        registerGauge("model.graph-size", "Size of the serialized graph imported, after optimization if enabled",
+                MetricUnits.BYTES, name, LoadedModel::getGraphBytes, tags);
+        registerGauge("model.warmup-time",
+                "Time taken by the warmup runs before the model was reported ready, -1 until done",
+                MetricUnits.MILLISECONDS, name, LoadedModel::getWarmupMillis, tags);
+        registerGauge("model.load-resident",
+                "Growth of the resident memory of the process while loading the model, mostly the native memory of the"
+                        + " graph and sessions. Approximate, as other threads allocate too, and -1 if unknown",
+                MetricUnits.BYTES, name, LoadedModel::getLoadResidentBytes, tags);
+        inferenceTimers.put(name, metricRegistry.timer(Metadata.builder()
+                .withName("model.inference-time")
+                .withDescription("Time taken by one run of the model on a batch of images, warmup runs excluded")
+                .withType(MetricType.TIMER)
+                .withUnit(MetricUnits.NANOSECONDS)
+                .build(), tags));
+        detectionTimers.put(name, metricRegistry.timer(Metadata.builder()
+                .withName("model.detection-time")
+                .withDescription("Time from handing an image to the model until its detections are back, waiting for"
+                        + " a batch and a free session included")
+                .withType(MetricType.TIMER)
+                .withUnit(MetricUnits.NANOSECONDS)
+                .build(), tags));
+    }
+
+    private void registerGauge(String metricName, String description, String unit, String name,
+                               ToLongFunction<LoadedModel> value, Tag... tags) {
+        AtomicReference<LoadedModel> current = models.get(name);
+        metricRegistry.register(Metadata.builder()
+                .withName(metricName)
+                .withDescription(description)
+                .withType(MetricType.GAUGE)
+                .withUnit(unit)
+                .build(), (Gauge<Long>) () -> {
+                    LoadedModel model = current.get();
+                    return model != null ? value.applyAsLong(model) : -1L;
+                }, tags);
+    }
+
+    @PreDestroy
+    synchronized void stop() {
+        stopped = true;
+        for (AtomicReference<LoadedModel> current : models.values()) {
+            LoadedModel model = current.getAndSet(null);
+            if (model != null) {
+                model.release();
+            }
+        }
+    }
+
+    /**
+     * @param name Key of the model variant
+     * @return Timer of the session runs of the model
+     */
+    public Timer getInferenceTimer(String name) {
+        return inferenceTimers.get(name);
+    }
+
+    /**
+     * @param name Key of the model variant
+     * @return Timer of detections end to end, from queueing the image for a batch until it has run
+     */
+    public Timer getDetectionTimer(String name) {
+        return detectionTimers.get(name);
+    }
+
+    public PixelBufferPool getPixelBufferPool() {
+        return pixelBufferPool;
+    }
+
+    /**
+     * Whether every model has loaded.
+     */
+    public boolean isReady() {
+        return models.values().stream().allMatch(current -> current.get() != null);
+    }
+
+    public boolean isReady(String name) {
+        AtomicReference<LoadedModel> current = models.get(name);
+        return current != null && current.get() != null;
+    }
+
+    /**
+     * @return Why models could not be loaded, by model name
+     */
+    public Map<String, String> getLoadFailures() {
+        return loadFailures;
+    }
+
+    /**
+     * Take a reference on the current version of a model, which must be released once the detection is done.
+     * @return The model, or null if it is unknown or not loaded
+     */
+    public LoadedModel acquire(String name) {
+        AtomicReference<LoadedModel> current = models.get(name);
+        if (current == null) {
+            return null;
+        }
+        while (true) {
+            LoadedModel model = current.get();
+            if (model == null || model.acquire()) {
+                return model;
+            }
+            // Swapped and closed between reading it and taking the reference, the newer version is in place by now
+        }
+    }
+
+    /**
+     * The current version of a model without taking a reference, to report on it. Its graph and sessions may be
+     * closed at any time, so it must not be used for detection.
+     * @return The model, or null if it is unknown or not loaded
+     */
+    public LoadedModel get(String name) {
+        AtomicReference<LoadedModel> current = models.get(name);
+        return current != null ? current.get() : null;
+    }
+
+    public List<String> getNames() {
+        return new ArrayList<>(models.keySet());
+    }
+
+    /**
+     * Load a new version of a model from its files, warm it up and swap it in. The previous version is closed once the
+     * detections still running on it have completed.
+     *
+     * Loading and warming up only hold the lock of this model, so other models can reload and the registry can stop
+     * meanwhile; the registry lock is only taken to swap the new version in.
+     * @return The new version
+     */
+    public LoadedModel reload(String name) throws IOException {
+        AtomicReference<LoadedModel> current = models.get(name);
+        if (current == null) {
+            throw new IllegalArgumentException("Unknown model " + name);
+        }
+        synchronized (reloadLocks.get(name)) {
+            LoadedModel loaded = current.get();
+            LoadedModel model;
+            try {
+                model = load(name, loaded != null ? loaded.getVersion() + 1 : 1, optimizeGraph, sessionCount,
+                        maxBatchSize, true);
+            }
+            catch (IOException | RuntimeException e) {
+                loadFailures.put(name, e.toString());
+                throw e;
+            }
+
+            LoadedModel previous;
+            synchronized (this) {
+                if (stopped) {
+                    model.release();
+                    throw new IllegalStateException("Model registry is stopped");
+                }
+                previous = current.getAndSet(model);
+            }
+            loadFailures.remove(name);
+
+            if (previous != null) {
+                LOG.info("Swapped model " + name + " from version " + previous.getVersion() + " to "
+                        + model.getVersion() + ", " + previous.getInFlight()
+                        + " detections still running on the previous version");
+                previous.release();
+            }
+            return model;
+        }
+    }
+
+    /**
+     * Load a model from its files next to the version in use, with or without optimizing its graph, to compare the
+     * two. It gets a single session without batching or warmup, and is not served: the caller runs it and releases
+     * it once done.
+     */
+    public LoadedModel loadForComparison(String name, boolean optimize) throws IOException {
+        if (!models.containsKey(name)) {
+            throw new IllegalArgumentException("Unknown model " + name);
+        }
+        return load(name, 0, optimize, 1, 1, false);
+    }
+
+    /**
+     * Stream the GraphDef out of the saved model and import it, then create the sessions and warm them up. Unless the
+     * graph is optimized, the GraphDef array passed to importGraphDef is the only copy of the model held on the heap;
+     * optimizing parses it into protobuf objects first, see {@link GraphOptimizer}.
+     */
+    private LoadedModel load(String name, long version, boolean optimize, int sessions, int batchSize, boolean warm)
+            throws IOException {
+        String model = modelOf(name);
+        String variant = variantOf(name);
+        String savedModelProperty = DEFAULT_VARIANT.equals(variant) ? "detection.model." + model + ".saved-model"
+                : "detection.model." + model + ".variant." + variant + ".saved-model";
+        String savedModel = config.getOptionalValue(savedModelProperty, String.class)
+                .orElse(DEFAULT_MODEL.equals(name) ? DEFAULT_SAVED_MODEL : null);
+        String labelMap = config.getOptionalValue("detection.model." + model + ".labels", String.class)
+                .orElse(DEFAULT_MODEL.equals(model) ? DEFAULT_LABELS : null);
+        if (savedModel == null || labelMap == null) {
+            throw new IOException(savedModelProperty + " and detection.model." + model + ".labels must both be set");
+        }
+
+        long start = System.nanoTime();
+        long residentBefore = residentBytes();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        String[] labels;
+        try (InputStream is = open(labelMap)) {
+            labels = loadLabels(is);
+        }
+
+        Graph graph = new Graph();
+        long graphBytes;
+        int graphNodes = 0;
+        SessionPool sessionPool = null;
+        DetectionBatcher batcher;
+        try {
+            byte[] graphDef;
+            try (InputStream is = open(savedModel)) {
+                graphDef = SavedModelReader.readGraphDef(is);
+            }
+            if (optimize) {
+                GraphDef original = GraphDef.parseFrom(graphDef);
+                GraphDef optimized = GraphOptimizer.optimize(original, DetectionBatcher.OUTPUT_NODES);
+                LOG.info("Optimized the graph of " + name + " from " + original.getNodeCount() + " to "
+                        + optimized.getNodeCount() + " nodes");
+                graphDef = optimized.toByteArray();
+            }
+            graph.importGraphDef(graphDef);
+            graphBytes = graphDef.length;
+            graphDef = null; // Not needed by the sessions, let it be collected meanwhile
+            if (graph.operation(DetectionBatcher.INPUT_NODE) == null) {
+                throw new IOException("The graph of " + name + " has no " + DetectionBatcher.INPUT_NODE + " input");
+            }
+            for (Iterator<Operation> operations = graph.operations(); operations.hasNext(); operations.next()) {
+                graphNodes++;
+            }
+            sessionPool = new SessionPool(graph, sessions, intraOpThreads, interOpThreads);
+            // Models loaded for a comparison time their runs themselves, they are not recorded as the served model's
+            batcher = new DetectionBatcher(sessionPool, pixelBufferPool, tensorLeaseManager, labels,
+                    batchSize, maxBatchWaitMillis, batchTimeoutMillis, warm ? inferenceTimers.get(name) : null);
+        }
+        catch (IOException | RuntimeException e) {
+            if (sessionPool != null) {
+                sessionPool.close();
+            }
+            graph.close();
+            throw e;
+        }
+
+        // Summing each pool's peak gives an upper bound, the pools may not have peaked at the same time, and
+        // detections running on other models during a reload are included
+        long loadPeakHeapBytes = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("Model " + name + " version " + version + " loaded from " + savedModel + " in " + loadMillis
+                + " ms with a peak heap of " + loadPeakHeapBytes / (1024 * 1024) + " MB");
+
+        long residentAfter = residentBytes();
+        long loadResidentBytes = residentBefore >= 0 && residentAfter >= 0
+                ? Math.max(0, residentAfter - residentBefore) : -1;
+
+        long warmupMillis = warm ? warmup(name, batcher, sessionPool.size()) : 0;
+        return new LoadedModel(model, variant, version, graph, sessionPool, batcher, labels, optimize, graphNodes,
+                graphBytes, loadMillis, loadPeakHeapBytes, loadResidentBytes, warmupMillis);
+    }
+
+    /**
+     * Resident memory of the process from /proc/self/status, or -1 where it is not available.
+     */
+    private static long residentBytes() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmRSS:")) {
+                    String[] fields = line.substring("VmRSS:".length()).trim().split("\\s+");
+                    return Long.parseLong(fields[0]) * 1024;
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            // Not on Linux
+        }
+        return -1;
+    }
+
+    private static InputStream open(String location) throws IOException {
+        if (location.startsWith(CLASSPATH_PREFIX)) {
+            String resource = location.substring(CLASSPATH_PREFIX.length());
+            InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource);
+            if (is == null) {
+                throw new IOException(resource + " not found");
+            }
+            return is;
+        }
+        return new FileInputStream(location);
+    }
+
+    /**
+     * Run blank images of every configured resolution, and every batch size up to the maximum, through each session.
+     * TensorFlow sets up its kernels for a shape on the first run with it, which would otherwise slow down the first
+     * requests after startup. Resolutions should be those images end up with after resizing, such as 1024x768 and
+     * 768x1024 for 4:3 photos with a maximum edge of 1024.
+     * @return Time taken in milliseconds
+     */
+    private long warmup(String name, DetectionBatcher batcher, int sessions) {
+        long start = System.nanoTime();
+        int runs = 0;
+        for (String resolution : warmupResolutions.orElse("").split(",")) {
+            if (resolution.trim().isEmpty()) {
+                continue;
+            }
+            String[] size = resolution.trim().toLowerCase().split("x");
+            int width;
+            int height;
+            try {
+                width = Integer.parseInt(size[0].trim());
+                height = Integer.parseInt(size.length == 2 ? size[1].trim() : "");
+            }
+            catch (NumberFormatException e) {
+                LOG.warning("Ignoring warmup resolution " + resolution + ", expected WIDTHxHEIGHT");
+                continue;
+            }
+            for (String batchSize : warmupBatchSizes.split(",")) {
+                int images = batchSize.trim().matches("\\d+") ? Integer.parseInt(batchSize.trim()) : 0;
+                if (images < 1 || images > Math.max(1, maxBatchSize)) {
+                    continue;
+                }
+                try {
+                    batcher.warmup(height, width, images);
+                    runs += sessions;
+                }
+                catch (IOException | RuntimeException e) {
+                    LOG.log(Level.WARNING, "Warmup of " + name + " failed for " + resolution + " with a batch of "
+                            + images, e);
+                }
+            }
+        }
+        long warmupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (runs > 0) {
+            LOG.info("Warmed up " + name + " with " + runs + " runs in " + warmupMillis + " ms");
+        }
+        return warmupMillis;
+    }
+
+    private static String[] loadLabels(InputStream is) throws IOException {
+        String text = CharStreams.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
+        StringIntLabelMapOuterClass.StringIntLabelMap.Builder builder = StringIntLabelMapOuterClass.StringIntLabelMap.newBuilder();
+        TextFormat.merge(text, builder);
+        StringIntLabelMapOuterClass.StringIntLabelMap proto = builder.build();
+        int maxId = 1;
+        for (StringIntLabelMapOuterClass.StringIntLabelMapItem item : proto.getItemList()) {
+            if (item.getId() > maxId) {
+                maxId = item.getId();
+            }
+        }
+        String[] ret = new String[maxId];
+        for (StringIntLabelMapOuterClass.StringIntLabelMapItem item : proto.getItemList()) {
+            ret[item.getId()-1] = item.getDisplayName();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,12 @@
+package io.quarkus.tensorflow;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a tensor cannot be created within the configured native memory budget.
+ */
+public class NativeMemoryExceededException extends IOException {
+    public NativeMemoryExceededException(String s) {
+        super(s);
+    }
+}
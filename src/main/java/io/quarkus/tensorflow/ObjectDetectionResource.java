@@ -1,23 +1,51 @@
 package io.quarkus.tensorflow;
 
-import io.smallrye.mutiny.Multi;
-import io.vertx.core.json.JsonObject;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import io.smallrye.mutiny.Uni;
 import io.vertx.mutiny.core.eventbus.EventBus;
-import org.apache.commons.imaging.ImageReadException;
-import org.jboss.resteasy.annotations.SseElementType;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.resteasy.plugins.providers.multipart.InputPart;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.awt.image.BufferedImage;
 import java.io.*;
-import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @Path("/object")
 public class ObjectDetectionResource {
+    private static final Logger LOG = Logger.getLogger(ObjectDetectionResource.class.getName());
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_COMPARISON_RUNS = 50;
+    private static final String MODEL_VARIANT_HEADER = "X-Model-Variant";
+    private static final String SHED_MESSAGE = "Too many detections in progress, please retry later.";
 
     @Inject
     ObjectDetectionService objectDetectionService;
@@ -25,61 +53,712 @@ public class ObjectDetectionResource {
     @Inject
     EventBus eventBus;
 
+    @Inject
+    InferenceExecutor inferenceExecutor;
+
+    @Inject
+    AdmissionController admissionController;
+
+    @Inject
+    ThumbnailService thumbnailService;
+
+    @Inject
+    ResultStreamHub resultStreamHub;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    ModelRegistry modelRegistry;
+
+    @ConfigProperty(name = "detection.bulk.parallelism", defaultValue = "0")
+    int bulkParallelism;
+
+    @ConfigProperty(name = "detection.bulk.max-image-mb", defaultValue = "32")
+    long bulkMaxImageMb;
+
+    @ConfigProperty(name = "detection.upload.max-body-mb", defaultValue = "40")
+    long uploadMaxBodyMb;
+
+    @ConfigProperty(name = "detection.frames.target-fps", defaultValue = "5")
+    double targetFps;
+
+    @ConfigProperty(name = "detection.frames.max-frame-mb", defaultValue = "8")
+    int maxFrameMb;
+
+    @ConfigProperty(name = "detection.graph.compare.enabled", defaultValue = "false")
+    boolean compareEnabled;
+
+    @ConfigProperty(name = "detection.reload.enabled", defaultValue = "false")
+    boolean reloadEnabled;
+
+    // Set while a graph comparison runs, only one is allowed at a time
+    private final AtomicBoolean comparing = new AtomicBoolean();
+
     @POST
     @Path("/detect/{threshold}")
     @Consumes("multipart/form-data")
     @Produces("application/json")
-    public ObjectDetectionResultComplete loadImage(@HeaderParam("Content-Length") String contentLength, @PathParam("threshold") int threshold, MultipartFormDataInput input) {
+    public Uni<ObjectDetectionResultComplete> loadImage(@HeaderParam("Content-Length") String contentLength, @PathParam("threshold") int threshold,
+                                                        @QueryParam("topK") @DefaultValue("0") int topK,
+                                                        @QueryParam("variant") String variant, @HeaderParam(MODEL_VARIANT_HEADER) String variantHeader,
+                                                        MultipartFormDataInput input) {
+        return loadModelImage(ModelRegistry.DEFAULT_MODEL, threshold, topK, variant, variantHeader, input);
+    }
+
+    /**
+     * Detect objects with one of the named models, see {@link ModelRegistry}. Returns 404 if the model is unknown.
+     * A variant of the model, such as a quantized one, is picked with the variant query parameter or the
+     * X-Model-Variant header, otherwise the model's default variant is used.
+     */
+    @POST
+    @Path("/detect/{model}/{threshold}")
+    @Consumes("multipart/form-data")
+    @Produces("application/json")
+    public Uni<ObjectDetectionResultComplete> loadModelImage(@PathParam("model") String model, @PathParam("threshold") int threshold,
+                                                             @QueryParam("topK") @DefaultValue("0") int topK,
+                                                             @QueryParam("variant") String variant, @HeaderParam(MODEL_VARIANT_HEADER) String variantHeader,
+                                                             MultipartFormDataInput input) {
+        final String key = resolveModel(model, variant, variantHeader);
         final InputPart inputPart = input.getFormDataMap().get("file").iterator().next();
-        final String fileName = parseFileName(inputPart.getHeaders());
+        final String fileName = parseFileName(inputPart.getHeaders().getFirst("Content-Disposition"));
 
-        ObjectDetectionResultComplete resultComplete = null;
         try {
             InputStream is = inputPart.getBody(InputStream.class, null);
-            resultComplete = objectDetectionService.detect(is, threshold);
-            resultComplete.setFileName(fileName);
+            return detect(key, readBody(is, null), fileName, threshold, topK);
+        }
+        catch (IOException e) {
+            return Uni.createFrom().item(errorResult(fileName));
+        }
+    }
+
+    /**
+     * Detect objects in an image posted as the raw request body rather than as a multipart form. The body is read
+     * straight into a single array sized from Content-Length, without multipart buffering. The original file name can
+     * be passed in an optional Content-Disposition header.
+     */
+    @POST
+    @Path("/detect/{threshold}")
+    @Consumes({MediaType.APPLICATION_OCTET_STREAM, "image/*"})
+    @Produces("application/json")
+    public Uni<ObjectDetectionResultComplete> loadRawImage(@HeaderParam("Content-Length") String contentLength,
+                                                           @HeaderParam("Content-Disposition") String contentDisposition,
+                                                           @PathParam("threshold") int threshold,
+                                                           @QueryParam("topK") @DefaultValue("0") int topK,
+                                                           @QueryParam("variant") String variant, @HeaderParam(MODEL_VARIANT_HEADER) String variantHeader,
+                                                           InputStream body) {
+        return loadRawImage(contentLength, contentDisposition, ModelRegistry.DEFAULT_MODEL, threshold, topK, variant,
+                variantHeader, body);
+    }
 
-            final JsonObject jsonObject = JsonObject.mapFrom(resultComplete);
-            eventBus.publish("result_stream", jsonObject);
+    @POST
+    @Path("/detect/{model}/{threshold}")
+    @Consumes({MediaType.APPLICATION_OCTET_STREAM, "image/*"})
+    @Produces("application/json")
+    public Uni<ObjectDetectionResultComplete> loadRawImage(@HeaderParam("Content-Length") String contentLength,
+                                                           @HeaderParam("Content-Disposition") String contentDisposition,
+                                                           @PathParam("model") String model,
+                                                           @PathParam("threshold") int threshold,
+                                                           @QueryParam("topK") @DefaultValue("0") int topK,
+                                                           @QueryParam("variant") String variant, @HeaderParam(MODEL_VARIANT_HEADER) String variantHeader,
+                                                           InputStream body) {
+        final String key = resolveModel(model, variant, variantHeader);
+        final String fileName = parseFileName(contentDisposition);
+
+        try {
+            return detect(key, readBody(body, contentLength), fileName, threshold, topK);
+        }
+        catch (IOException e) {
+            return Uni.createFrom().item(errorResult(fileName));
         }
-        catch (IOException | ImageReadException | MediaTypeException | URISyntaxException e) {
-            resultComplete = new ObjectDetectionResultComplete();
+    }
+
+    /**
+     * Detect objects in many images with a single request. Every file of the multipart form is an image or a zip
+     * archive of images. The images are read one at a time and detected in parallel, and each result is written as a
+     * line of JSON as soon as it is ready, so the results are in order of completion rather than upload.
+     */
+    @POST
+    @Path("/detect/{threshold}/bulk")
+    @Consumes("multipart/form-data")
+    @Produces(NDJSON)
+    public StreamingOutput loadImages(@PathParam("threshold") int threshold,
+                                      @QueryParam("model") @DefaultValue(ModelRegistry.DEFAULT_MODEL) String model,
+                                      @QueryParam("topK") @DefaultValue("0") int topK,
+                                      @QueryParam("variant") String variant, @HeaderParam(MODEL_VARIANT_HEADER) String variantHeader,
+                                      MultipartFormDataInput input) {
+        String key = resolveModel(model, variant, variantHeader);
+        List<BulkImageReader.Source> sources = new ArrayList<>();
+        for (List<InputPart> inputParts : input.getFormDataMap().values()) {
+            for (InputPart inputPart : inputParts) {
+                sources.add(new BulkImageReader.Source(parseFileName(inputPart.getHeaders().getFirst("Content-Disposition")),
+                        inputPart.getMediaType().toString(), () -> inputPart.getBody(InputStream.class, null)));
+            }
+        }
+        return output -> detectAll(sources, key, threshold, topK, output);
+    }
+
+    /**
+     * Detect objects in every image of a zip archive posted as the raw request body. The archive is read from the
+     * request as it arrives rather than buffered first.
+     */
+    @POST
+    @Path("/detect/{threshold}/bulk")
+    @Consumes("application/zip")
+    @Produces(NDJSON)
+    public StreamingOutput loadArchive(@PathParam("threshold") int threshold,
+                                       @QueryParam("model") @DefaultValue(ModelRegistry.DEFAULT_MODEL) String model,
+                                       @QueryParam("topK") @DefaultValue("0") int topK,
+                                       @QueryParam("variant") String variant, @HeaderParam(MODEL_VARIANT_HEADER) String variantHeader,
+                                       InputStream body) {
+        String key = resolveModel(model, variant, variantHeader);
+        List<BulkImageReader.Source> sources = Collections.singletonList(
+                new BulkImageReader.Source("upload.zip", "application/zip", () -> body));
+        return output -> detectAll(sources, key, threshold, topK, output);
+    }
+
+    /**
+     * Detect objects in a live camera stream, posted as an MJPEG (multipart/x-mixed-replace) body or as a sequence of
+     * JPEGs each prefixed with its length. The results of every detected frame are published on the dashboard stream
+     * like uploads are. At most one frame per stream is detected at a time and no more than the target FPS: frames
+     * arriving in between are dropped rather than queued, so results stay close to real time when detection is
+     * slower than the camera. Returns the frame counts once the stream ends.
+     * @param name Name of the camera, reported as the file name of its frames
+     * @param fps Target frames per second, overriding the configured one when above 0
+     */
+    @POST
+    @Path("/frames/{threshold}")
+    @Consumes({FrameStreamReader.MJPEG, FrameStreamReader.LENGTH_PREFIXED})
+    @Produces(MediaType.APPLICATION_JSON)
+    public FrameStreamSummary loadFrames(@PathParam("threshold") int threshold,
+                                         @QueryParam("model") @DefaultValue(ModelRegistry.DEFAULT_MODEL) String model,
+                                         @QueryParam("topK") @DefaultValue("0") int topK,
+                                         @QueryParam("name") @DefaultValue("camera") String name,
+                                         @QueryParam("fps") @DefaultValue("0") double fps,
+                                         @QueryParam("variant") String variant, @HeaderParam(MODEL_VARIANT_HEADER) String variantHeader,
+                                         @Context HttpHeaders headers, InputStream body) throws IOException {
+        String key = resolveModel(model, variant, variantHeader);
+        MediaType mediaType = headers.getMediaType();
+        String boundary = mediaType.getParameters().get("boundary");
+        FrameStreamReader reader = FrameStreamReader.create(mediaType.getType() + "/" + mediaType.getSubtype(),
+                boundary != null ? boundary.replace("\"", "") : null, body, maxFrameMb * 1024 * 1024);
+
+        double framesPerSecond = fps > 0 ? fps : targetFps;
+        long intervalNanos = framesPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond) : 0;
+        long nextDue = System.nanoTime();
+        AtomicBoolean inFlight = new AtomicBoolean();
+        AtomicLong detected = new AtomicLong();
+        AtomicLong dropped = new AtomicLong();
+        CompletableFuture<ObjectDetectionResultComplete> last = CompletableFuture.completedFuture(null);
+        long received = 0;
+
+        byte[] frame;
+        while ((frame = reader.next()) != null) {
+            received++;
+            long now = System.nanoTime();
+            if (now - nextDue < 0 || !inFlight.compareAndSet(false, true)) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            nextDue = now + intervalNanos;
+            try {
+                last = detect(key, frame, name + "#" + received, threshold, topK).subscribeAsCompletionStage();
+                last.whenComplete((resultComplete, e) -> {
+                    inFlight.set(false);
+                    (e == null && resultComplete.getError() == null ? detected : dropped).incrementAndGet();
+                });
+            }
+            catch (ServiceUnavailableException e) {
+                inFlight.set(false);
+                dropped.incrementAndGet();
+            }
+        }
+
+        // Let the last frame finish so it is counted
+        try {
+            last.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            // Already counted as dropped
+        }
+
+        FrameStreamSummary summary = new FrameStreamSummary();
+        summary.setName(name);
+        summary.setReceived(received);
+        summary.setDetected(detected.get());
+        summary.setDropped(dropped.get());
+        return summary;
+    }
+
+    /**
+     * Keep up to the bulk parallelism of images in detection while reading the next ones, and write the results as
+     * they complete. Images that cannot be detected, including those shed by admission control, are reported with an
+     * error line of their own.
+     */
+    private void detectAll(List<BulkImageReader.Source> sources, String model, int threshold, int topK,
+                           OutputStream output) throws IOException {
+        int parallelism = bulkParallelism > 0 ? bulkParallelism : inferenceExecutor.getThreads();
+        BlockingQueue<ObjectDetectionResultComplete> completed = new LinkedBlockingQueue<>();
+        int pending = 0;
+
+        try (BulkImageReader reader = new BulkImageReader(sources, bulkMaxImageMb * 1024 * 1024)) {
+            BulkImageReader.Image image;
+            while ((image = reader.next()) != null) {
+                while (pending >= parallelism) {
+                    writeLine(takeCompleted(completed), output);
+                    pending--;
+                }
+                ObjectDetectionResultComplete ready;
+                while ((ready = completed.poll()) != null) {
+                    writeLine(ready, output);
+                    pending--;
+                }
+
+                final String fileName = image.getName();
+                if (image.getData() == null) {
+                    writeLine(errorResult(fileName, "Image is too large."), output);
+                    continue;
+                }
+                try {
+                    detect(model, image.getData(), fileName, threshold, topK).subscribeAsCompletionStage()
+                            .whenComplete((resultComplete, e) -> completed.add(e == null ? resultComplete
+                                    : errorResult(fileName, failureMessage(e))));
+                }
+                catch (ServiceUnavailableException e) {
+                    completed.add(errorResult(fileName, SHED_MESSAGE));
+                }
+                pending++;
+            }
+        }
+        while (pending > 0) {
+            writeLine(takeCompleted(completed), output);
+            pending--;
+        }
+    }
+
+    /**
+     * @return The error reported for an image whose detection failed, telling shed images apart so they are retried
+     */
+    private static String failureMessage(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof ServiceUnavailableException || cause instanceof RejectedExecutionException) {
+            return SHED_MESSAGE;
+        }
+        LOG.log(Level.WARNING, "Detection failed", cause);
+        return "Could not detect objects in the image.";
+    }
+
+    private static ObjectDetectionResultComplete takeCompleted(BlockingQueue<ObjectDetectionResultComplete> completed)
+            throws IOException {
+        try {
+            return completed.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for detections");
+        }
+    }
+
+    private void writeLine(ObjectDetectionResultComplete resultComplete, OutputStream output) throws IOException {
+        output.write(objectMapper.writeValueAsBytes(resultComplete));
+        output.write('\n');
+        output.flush();
+    }
+
+    /**
+     * Decode and run detection on the inference executor, leaving the HTTP worker thread free as soon as the upload
+     * has been read. When the node is saturated or the executor's queue is full the request fails with 503.
+     */
+    private Uni<ObjectDetectionResultComplete> detect(String model, byte[] rawData, String fileName, int threshold, int topK) {
+        if (!modelRegistry.isReady(model)) {
+            throw new ServiceUnavailableException("The model is still loading, please retry later.", 5L);
+        }
+        if (!admissionController.tryAdmit()) {
+            throw new ServiceUnavailableException(SHED_MESSAGE,
+                    admissionController.retryAfterSeconds());
+        }
+        // Submitted right away rather than on subscription, so the admitted slot is always given back
+        CompletableFuture<ObjectDetectionResultComplete> result = inferenceExecutor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                return detectNow(model, rawData, fileName, threshold, topK);
+            }
+            finally {
+                admissionController.complete(start);
+            }
+        });
+        result.whenComplete((resultComplete, e) -> {
+            if (e instanceof RejectedExecutionException) {
+                admissionController.cancel();
+            }
+        });
+        return Uni.createFrom().completionStage(result);
+    }
+
+    private ObjectDetectionResultComplete detectNow(String model, byte[] rawData, String fileName, int threshold, int topK) {
+        ObjectDetectionResultComplete resultComplete = null;
+        try {
+            AtomicReference<BufferedImage> decoded = new AtomicReference<>();
+            resultComplete = objectDetectionService.detect(model, rawData, threshold, topK, decoded::set);
             resultComplete.setFileName(fileName);
-            resultComplete.setError("Error reading image data. Please try another file.");
+            publish(resultComplete, decoded.get());
+        }
+        catch (NativeMemoryExceededException e) {
+            throw new ServiceUnavailableException(e.getMessage(), 1L);
+        }
+        catch (IOException | MediaTypeException e) {
+            resultComplete = errorResult(fileName);
         }
         return resultComplete;
     }
 
+    /**
+     * Publish the result to the dashboard stream. Results the dashboard will show get a thumbnail first, made in the
+     * background so the response to the upload is not held up by it. The result is passed on the event bus as is,
+     * see {@link ObjectDetectionResultCodec}.
+     * @param image Image as decoded for the model, the thumbnail is scaled from it. Null for results served from the
+     *              cache, which get no thumbnail
+     */
+    private void publish(ObjectDetectionResultComplete resultComplete, BufferedImage image) {
+        if (resultComplete.getResults().isEmpty() || image == null) {
+            eventBus.publish(ResultStreamHub.ADDRESS, resultComplete);
+            return;
+        }
+        thumbnailService.create(resultComplete.getUuid(), image).thenAccept(stored -> {
+            // A copy, as the response may still be serializing the original
+            ObjectDetectionResultComplete event = new ObjectDetectionResultComplete(resultComplete);
+            event.setThumbnail(stored);
+            eventBus.publish(ResultStreamHub.ADDRESS, event);
+        });
+    }
+
+    /**
+     * @param variant Variant from the query, taking precedence over the one from the header
+     * @return Key of the model variant to run
+     */
+    private String resolveModel(String model, String variant, String variantHeader) {
+        String picked = variant != null && !variant.isEmpty() ? variant : variantHeader;
+        String key = modelRegistry.resolve(model, picked);
+        if (key == null) {
+            throw new NotFoundException("Unknown model " + model + (picked != null ? " or variant " + picked : ""));
+        }
+        return key;
+    }
+
+    private static ObjectDetectionResultComplete errorResult(String fileName) {
+        return errorResult(fileName, "Error reading image data. Please try another file.");
+    }
+
+    private static ObjectDetectionResultComplete errorResult(String fileName, String error) {
+        ObjectDetectionResultComplete resultComplete = new ObjectDetectionResultComplete();
+        resultComplete.setFileName(fileName);
+        resultComplete.setError(error);
+        return resultComplete;
+    }
+
     @GET
     @Path("/labels")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<String> labels(@QueryParam("image") String imageURL) {
-        return objectDetectionService.getLabels();
+    public List<String> labels(@QueryParam("image") String imageURL,
+                               @QueryParam("model") @DefaultValue(ModelRegistry.DEFAULT_MODEL) String model) {
+        List<String> labels = objectDetectionService.getLabels(model);
+        if (labels == null) {
+            throw new NotFoundException("Model " + model + " is unknown or not loaded");
+        }
+        return labels;
+    }
+
+    /**
+     * The models served by this node with their current version and state.
+     */
+    @GET
+    @Path("/models")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<ModelInfo> models() {
+        List<ModelInfo> models = new ArrayList<>();
+        Map<String, String> failures = modelRegistry.getLoadFailures();
+        for (String key : modelRegistry.getNames()) {
+            models.add(ModelInfo.of(key, modelRegistry.get(key), failures.get(key),
+                    modelRegistry.getInferenceTimer(key)));
+        }
+        return models;
+    }
+
+    /**
+     * Load the model again from its configured files and swap it in once it is warmed up. Detections keep running on
+     * the previous version meanwhile, and those already running finish on it before it is closed. Returns 500 with
+     * the error, and the previous version still in use, if the model cannot be loaded.
+     *
+     * The endpoint only exists when detection.reload.enabled is set. The model is loaded on the inference executor.
+     * @param variant Variant to reload, the model's default variant if not set
+     */
+    @POST
+    @Path("/models/{model}/reload")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<ModelInfo> reload(@PathParam("model") String model, @QueryParam("variant") String variant) {
+        if (!reloadEnabled) {
+            throw new NotFoundException();
+        }
+        String key = resolveModel(model, variant, null);
+        return Uni.createFrom().completionStage(inferenceExecutor.submit(() -> {
+            try {
+                return ModelInfo.of(key, modelRegistry.reload(key), null, modelRegistry.getInferenceTimer(key));
+            }
+            catch (IOException | RuntimeException e) {
+                throw new InternalServerErrorException("Could not reload model " + model + ": " + e);
+            }
+        }));
     }
 
+    /**
+     * Run the image posted as the raw request body through the original and the optimized graph of a model, and
+     * report whether they detect the same objects along with their size and latency. Both graphs are loaded for the
+     * comparison, whichever one is being served, so this is meant for checking a model rather than for regular use.
+     *
+     * The endpoint only exists when detection.graph.compare.enabled is set. The comparison runs on the inference
+     * executor, and only one runs at a time: requests made meanwhile fail with 409.
+     * @param runs Timed runs on each graph
+     * @param variant Variant to compare, the model's default variant if not set
+     */
+    @POST
+    @Path("/models/{model}/compare/{threshold}")
+    @Consumes({MediaType.APPLICATION_OCTET_STREAM, "image/*"})
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<GraphComparison> compare(@HeaderParam("Content-Length") String contentLength,
+                                        @PathParam("model") String model, @PathParam("threshold") int threshold,
+                                        @QueryParam("runs") @DefaultValue("5") int runs,
+                                        @QueryParam("variant") String variant, InputStream body) {
+        if (!compareEnabled) {
+            throw new NotFoundException();
+        }
+        String key = resolveModel(model, variant, null);
+        byte[] rawData;
+        try {
+            rawData = readBody(body, contentLength);
+        }
+        catch (IOException e) {
+            throw new InternalServerErrorException("Could not read the image: " + e);
+        }
+        if (!comparing.compareAndSet(false, true)) {
+            throw new ClientErrorException("A comparison is already running, please retry later.",
+                    Response.Status.CONFLICT);
+        }
+        // Submitted straight away rather than on subscription, so the flag is cleared whatever happens to the request
+        CompletableFuture<GraphComparison> result = inferenceExecutor.submit(() -> {
+            try {
+                return objectDetectionService.compare(key, rawData, threshold, Math.min(runs, MAX_COMPARISON_RUNS));
+            }
+            catch (MediaTypeException e) {
+                throw new BadRequestException("Error reading image data. Please try another file.");
+            }
+            catch (IOException e) {
+                throw new InternalServerErrorException("Could not compare the graphs of " + model + ": " + e);
+            }
+        });
+        result.whenComplete((comparison, e) -> comparing.set(false));
+        return Uni.createFrom().completionStage(result);
+    }
+
+    /**
+     * Stream detection results to the dashboard. A reconnecting browser sends the id of the last event it received
+     * and is replayed the recent events it missed.
+     * @param labels Comma separated labels to keep, all labels if not set
+     * @param minScore Minimum score in percent of the detections to keep
+     * @param minObjects Minimum number of kept detections for a result to be sent
+     */
     @GET
     @Path("/stream")
     @Produces(MediaType.SERVER_SENT_EVENTS)
-    @SseElementType(MediaType.APPLICATION_JSON)
-    public Multi<JsonObject> stream()
-    {
-        return eventBus.<JsonObject>consumer("result_stream")
-                .toMulti()
-                .map(b -> b.body());
+    public void stream(@Context SseEventSink sink, @Context Sse sse,
+                       @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId,
+                       @QueryParam("labels") String labels,
+                       @QueryParam("minScore") @DefaultValue("0") int minScore,
+                       @QueryParam("minObjects") @DefaultValue("0") int minObjects) {
+        resultStreamHub.subscribe(sink, sse, StreamFilter.of(labels, minScore, minObjects), lastEventId);
     }
 
     @GET
     @Path("/data")
     @Produces(MediaType.TEXT_PLAIN)
     public String getImageData(@QueryParam("uuid") String uuid){
-        return objectDetectionService.getImageData(uuid); // Will return 204 No Content if cache miss
+        return objectDetectionService.getImageData(uuid); // Will return 204 No Content if not stored
+    }
+
+    /**
+     * Serve a stored image as binary with its own media type, instead of the Base64 text of /data. The bytes are
+     * written from the off-heap store in small chunks rather than copied onto the heap as a whole. Images never change
+     * for a given UUID, so the UUID doubles as a strong ETag and browsers may cache the image. A matching
+     * If-None-Match gets 304 even after the image has expired from the store. A single byte range may be requested
+     * with the Range header.
+     */
+    @GET
+    @Path("/image/{uuid}")
+    public Response getImage(@PathParam("uuid") String uuid, @HeaderParam("If-None-Match") String ifNoneMatch,
+                             @HeaderParam("Range") String range) {
+        return imageResponse(() -> objectDetectionService.getImage(uuid), uuid, ifNoneMatch, range);
+    }
+
+    /**
+     * Serve the JPEG thumbnail of a stored image, made for the dashboard. Returns 404 if it was not made or has
+     * expired, in which case the original image can be used instead.
+     */
+    @GET
+    @Path("/image/{uuid}/thumbnail")
+    public Response getThumbnail(@PathParam("uuid") String uuid, @HeaderParam("If-None-Match") String ifNoneMatch,
+                                 @HeaderParam("Range") String range) {
+        return imageResponse(() -> thumbnailService.getThumbnail(uuid), uuid + "-thumbnail", ifNoneMatch, range);
+    }
+
+    private static Response imageResponse(Supplier<ImageStore.StoredImage> lookup, String tag, String ifNoneMatch,
+                                          String range) {
+        // Checked before the lookup, the browser's copy is still valid once the store has dropped the image
+        EntityTag entityTag = new EntityTag(tag);
+        if (matchesEntityTag(ifNoneMatch, entityTag)) {
+            return Response.notModified(entityTag).build();
+        }
+
+        ImageStore.StoredImage image = lookup.get();
+        if (image == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+
+        ByteBuffer data = image.getData();
+        int length = data.remaining();
+        Response.ResponseBuilder response;
+
+        long[] byteRange = parseRange(range, length);
+        if (byteRange == null) {
+            response = Response.ok();
+        }
+        else if (byteRange.length == 0) {
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + length)
+                    .build();
+        }
+        else {
+            data.position((int) byteRange[0]).limit((int) byteRange[1] + 1);
+            response = Response.status(Response.Status.PARTIAL_CONTENT)
+                    .header("Content-Range", "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + length);
+        }
+
+        StreamingOutput body = output -> {
+            WritableByteChannel channel = Channels.newChannel(output);
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        };
+        return response.entity(body)
+                .type(image.getMediaType())
+                .header(HttpHeaders.CONTENT_LENGTH, data.remaining())
+                .header("Accept-Ranges", "bytes")
+                .header(HttpHeaders.CACHE_CONTROL, "private, max-age=86400, immutable")
+                .tag(entityTag)
+                .build();
+    }
+
+    private static boolean matchesEntityTag(String ifNoneMatch, EntityTag entityTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String quoted = "\"" + entityTag.getValue() + "\"";
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(quoted)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a single "bytes=first-last", "bytes=first-" or "bytes=-suffix" range.
+     * @return The first and last byte positions, an empty array if the range cannot be satisfied, or null to serve
+     *         the whole image when there is no range or it is not a single byte range
+     */
+    static long[] parseRange(String range, int length) {
+        if (range == null || !range.startsWith("bytes=") || range.contains(",")) {
+            return null;
+        }
+        String[] positions = range.substring("bytes=".length()).trim().split("-", -1);
+        if (positions.length != 2) {
+            return null;
+        }
+        try {
+            long first;
+            long last;
+            if (positions[0].isEmpty()) {
+                long suffix = Long.parseLong(positions[1]);
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+            }
+            else {
+                first = Long.parseLong(positions[0]);
+                last = positions[1].isEmpty() ? length - 1 : Math.min(Long.parseLong(positions[1]), length - 1);
+            }
+            if (first >= length || first > last) {
+                return new long[0];
+            }
+            return new long[]{first, last};
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the whole body of a single image upload, limited to detection.upload.max-body-mb. When the length is known
+     * up front, the body is copied exactly once into an array of that size instead of growing a buffer as it is read.
+     */
+    private byte[] readBody(InputStream body, String contentLength) throws IOException {
+        long maxBytes = uploadMaxBodyMb * 1024 * 1024;
+        long length = -1;
+        if (contentLength != null) {
+            try {
+                length = Long.parseLong(contentLength.trim());
+            }
+            catch (NumberFormatException e) {
+                // Fall back to reading until the end of the stream
+            }
+        }
+        // Content-Length is only trusted to size the array once it is known to be within the limit
+        if (length > maxBytes) {
+            throw imageTooLarge(maxBytes);
+        }
+        if (length < 0) {
+            byte[] rawData = ByteStreams.toByteArray(ByteStreams.limit(body, maxBytes + 1));
+            if (rawData.length > maxBytes) {
+                throw imageTooLarge(maxBytes);
+            }
+            return rawData;
+        }
+
+        byte[] rawData = new byte[(int) length];
+        ByteStreams.readFully(body, rawData);
+        return rawData;
+    }
+
+    private static WebApplicationException imageTooLarge(long maxBytes) {
+        return new WebApplicationException("Images are limited to " + maxBytes / (1024 * 1024) + " MB.",
+                Response.Status.REQUEST_ENTITY_TOO_LARGE);
     }
 
     /**
      * Parse Content-Disposition header to get the original file name.
      */
-    private static String parseFileName(MultivaluedMap<String, String> headers) {
-        String[] contentDispositionHeader = headers.getFirst("Content-Disposition").split(";");
+    private static String parseFileName(String contentDisposition) {
+        if (contentDisposition == null) {
+            return "randomName";
+        }
+        String[] contentDispositionHeader = contentDisposition.split(";");
         for (String name : contentDispositionHeader) {
             if ((name.trim().startsWith("filename"))) {
                 String[] tmp = name.split("=");
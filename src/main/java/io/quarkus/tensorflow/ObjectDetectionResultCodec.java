@@ -0,0 +1,134 @@
+package io.quarkus.tensorflow;
+
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Event bus codec for detection results. Within the JVM the result is passed by reference without any conversion.
+ * Across a clustered event bus it is written in a compact binary form: length prefixed UTF-8 strings, longs, ints
+ * and floats in a fixed order, with -1 as the length of a null string.
+ */
+@ApplicationScoped
+public class ObjectDetectionResultCodec implements MessageCodec<ObjectDetectionResultComplete, ObjectDetectionResultComplete> {
+
+    void register(@Observes StartupEvent event, Vertx vertx) {
+        // Replaces the local-only codec Quarkus registers for the @ConsumeEvent parameter type
+        vertx.eventBus().unregisterDefaultCodec(ObjectDetectionResultComplete.class);
+        vertx.eventBus().registerDefaultCodec(ObjectDetectionResultComplete.class, this);
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, ObjectDetectionResultComplete result) {
+        appendString(buffer, result.getFileName());
+        appendString(buffer, result.getMediaType());
+        appendString(buffer, result.getUuid());
+        appendString(buffer, result.getError());
+        appendString(buffer, result.getModel());
+        appendString(buffer, result.getModelVariant());
+        buffer.appendLong(result.getModelVersion());
+        buffer.appendInt(result.getWidth());
+        buffer.appendInt(result.getHeight());
+        buffer.appendInt(result.getInputWidth());
+        buffer.appendInt(result.getInputHeight());
+        buffer.appendByte((byte) (result.isThumbnail() ? 1 : 0));
+
+        List<ObjectDetectionResult> results = result.getResults();
+        buffer.appendInt(results != null ? results.size() : -1);
+        if (results != null) {
+            for (ObjectDetectionResult detection : results) {
+                appendString(buffer, detection.getLabel());
+                buffer.appendFloat(detection.getScore());
+                buffer.appendFloat(detection.getX1());
+                buffer.appendFloat(detection.getY1());
+                buffer.appendFloat(detection.getX2());
+                buffer.appendFloat(detection.getY2());
+            }
+        }
+    }
+
+    @Override
+    public ObjectDetectionResultComplete decodeFromWire(int pos, Buffer buffer) {
+        int[] position = {pos};
+        ObjectDetectionResultComplete result = new ObjectDetectionResultComplete();
+        result.setFileName(readString(buffer, position));
+        result.setMediaType(readString(buffer, position));
+        result.setUuid(readString(buffer, position));
+        result.setError(readString(buffer, position));
+        result.setModel(readString(buffer, position));
+        result.setModelVariant(readString(buffer, position));
+        result.setModelVersion(buffer.getLong(position[0]));
+        position[0] += Long.BYTES;
+        result.setWidth(readInt(buffer, position));
+        result.setHeight(readInt(buffer, position));
+        result.setInputWidth(readInt(buffer, position));
+        result.setInputHeight(readInt(buffer, position));
+        result.setThumbnail(buffer.getByte(position[0]++) != 0);
+
+        int count = readInt(buffer, position);
+        if (count >= 0) {
+            List<ObjectDetectionResult> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String label = readString(buffer, position);
+                results.add(new ObjectDetectionResult(label, readFloat(buffer, position), readFloat(buffer, position),
+                        readFloat(buffer, position), readFloat(buffer, position), readFloat(buffer, position)));
+            }
+            result.setResults(results);
+        }
+        return result;
+    }
+
+    @Override
+    public ObjectDetectionResultComplete transform(ObjectDetectionResultComplete result) {
+        return result;
+    }
+
+    @Override
+    public String name() {
+        return ObjectDetectionResultComplete.class.getName();
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+
+    private static void appendString(Buffer buffer, String value) {
+        if (value == null) {
+            buffer.appendInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.appendInt(bytes.length);
+        buffer.appendBytes(bytes);
+    }
+
+    private static String readString(Buffer buffer, int[] position) {
+        int length = readInt(buffer, position);
+        if (length < 0) {
+            return null;
+        }
+        String value = buffer.getString(position[0], position[0] + length, StandardCharsets.UTF_8.name());
+        position[0] += length;
+        return value;
+    }
+
+    private static int readInt(Buffer buffer, int[] position) {
+        int value = buffer.getInt(position[0]);
+        position[0] += Integer.BYTES;
+        return value;
+    }
+
+    private static float readFloat(Buffer buffer, int[] position) {
+        float value = buffer.getFloat(position[0]);
+        position[0] += Float.BYTES;
+        return value;
+    }
+}
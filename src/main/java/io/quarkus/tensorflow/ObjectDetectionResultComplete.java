@@ -11,7 +11,35 @@ public class ObjectDetectionResultComplete {
 
     private int width;
     private int height;
+    private int inputWidth;
+    private int inputHeight;
     private String error;
+    private boolean thumbnail;
+    private String model;
+    private String modelVariant;
+    private long modelVersion;
+
+    public ObjectDetectionResultComplete() {
+    }
+
+    /**
+     * Shallow copy, sharing the list of results.
+     */
+    public ObjectDetectionResultComplete(ObjectDetectionResultComplete other) {
+        this.fileName = other.fileName;
+        this.results = other.results;
+        this.mediaType = other.mediaType;
+        this.uuid = other.uuid;
+        this.width = other.width;
+        this.height = other.height;
+        this.inputWidth = other.inputWidth;
+        this.inputHeight = other.inputHeight;
+        this.error = other.error;
+        this.thumbnail = other.thumbnail;
+        this.model = other.model;
+        this.modelVariant = other.modelVariant;
+        this.modelVersion = other.modelVersion;
+    }
 
     public List<ObjectDetectionResult> getResults() {
         return results;
@@ -61,6 +89,28 @@ public class ObjectDetectionResultComplete {
         this.height = height;
     }
 
+    /**
+     * Width of the image fed to the model, which is smaller than the original when the image was downscaled.
+     */
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public void setInputWidth(int inputWidth) {
+        this.inputWidth = inputWidth;
+    }
+
+    /**
+     * Height of the image fed to the model, which is smaller than the original when the image was downscaled.
+     */
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    public void setInputHeight(int inputHeight) {
+        this.inputHeight = inputHeight;
+    }
+
     public String getError() {
         return error;
     }
@@ -68,4 +118,39 @@ public class ObjectDetectionResultComplete {
     public void setError(String error) {
         this.error = error;
     }
+
+    /**
+     * Whether a thumbnail of the image is available for the dashboard.
+     */
+    public boolean isThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(boolean thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getModelVariant() {
+        return modelVariant;
+    }
+
+    public void setModelVariant(String modelVariant) {
+        this.modelVariant = modelVariant;
+    }
+
+    public long getModelVersion() {
+        return modelVersion;
+    }
+
+    public void setModelVersion(long modelVersion) {
+        this.modelVersion = modelVersion;
+    }
 }
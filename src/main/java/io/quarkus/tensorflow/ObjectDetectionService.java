@@ -1,198 +1,273 @@
 package io.quarkus.tensorflow;
 
-import com.google.common.io.ByteStreams;
-import com.google.common.io.CharStreams;
-import com.google.protobuf.TextFormat;
-import io.quarkus.cache.CacheResult;
-import object_detection.protos.StringIntLabelMapOuterClass;
-import org.apache.commons.imaging.ImageInfo;
-import org.apache.commons.imaging.ImageReadException;
-import org.apache.commons.imaging.Imaging;
-import org.tensorflow.Graph;
-import org.tensorflow.Session;
-import org.tensorflow.Tensor;
-import org.tensorflow.framework.GraphDef;
-import org.tensorflow.framework.SavedModel;
-import org.tensorflow.types.UInt8;
-
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Timer;
+
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URISyntaxException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 @ApplicationScoped
 public class ObjectDetectionService {
+    private static final int CHANNELS = 3;
 
-    private static final String LABEL_RESOURCE_PATH = "labels/mscoco_label_map.pbtxt";
-    private static final String MODEL_FILE_PATH = "saved_model/saved_model.pb";
-
-    private Session session;
-    private String[] labels;
-
-    private Map<String, String> imageData = new HashMap<>();
+    // Largest difference of a score or box coordinate for graphs to be considered to detect the same
+    private static final float COMPARISON_TOLERANCE = 1e-4f;
 
-    public ObjectDetectionService() throws IOException, ReflectiveOperationException, URISyntaxException {
-        InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(MODEL_FILE_PATH);
+    @ConfigProperty(name = "detection.resize.max-edge", defaultValue = "0")
+    int resizeMaxEdge;
 
-        byte[] modelBytes = ByteStreams.toByteArray(is);
-        this.labels = loadLabels();
+    @ConfigProperty(name = "detection.resize.interpolation", defaultValue = "bilinear")
+    String resizeInterpolation;
 
-        SavedModel savedModel = SavedModel.parseFrom(modelBytes);
-        GraphDef graphDef = savedModel.getMetaGraphsList().get(0).getGraphDef();
-
-        LoadTensorFlow.load();
-
-        Graph graph = new Graph();
-        graph.importGraphDef(graphDef.toByteArray());
-        this.session = new Session(graph);
-    }
+    @ConfigProperty(name = "detection.resize.subsample", defaultValue = "true")
+    boolean resizeSubsample;
 
-    @CacheResult(cacheName = "labels")
-    public List<String> getLabels() {
-        List<String> labelsList = Arrays.asList(labels);
-        labelsList = labelsList.stream().filter(Objects::nonNull).collect(Collectors.toList());
-        Collections.sort(labelsList);
-        return labelsList;
-    }
+    @Inject
+    MetricRegistry metricRegistry;
 
-    public ObjectDetectionResultComplete detect(InputStream inputStream, int threshold) throws IOException, URISyntaxException, ImageReadException, MediaTypeException {
-        byte[] rawData = ByteStreams.toByteArray(inputStream);
-        return detect(rawData, threshold);
-    }
+    @Inject
+    ImageDecoders imageDecoders;
 
-    public ObjectDetectionResultComplete detect(byte[] rawData, int threshold) throws IOException, ImageReadException, URISyntaxException, MediaTypeException {
-        // Get metadata about the image from the raw bytes
-        ImageInfo imageInfo = Imaging.getImageInfo(rawData);
+    @Inject
+    ModelRegistry modelRegistry;
 
-        List<Tensor<?>> outputs = null;
+    @Inject
+    ImageStore imageStore;
 
-        Tensor<UInt8> input = makeImageTensor(rawData, imageInfo);
-        outputs= session.runner().feed("image_tensor", input)
-                .fetch("detection_scores")
-                .fetch("detection_classes")
-                .fetch("detection_boxes").run();
+    @Inject
+    DetectionResultCache detectionResultCache;
 
-        Tensor<Float> scoresT = outputs.get(0).expect(Float.class);
-        Tensor<Float> classesT = outputs.get(1).expect(Float.class);
-        Tensor<Float> boxesT = outputs.get(2).expect(Float.class);
+    private PixelBufferPool pixelBufferPool;
+    private ImageScaler imageScaler;
+    private Histogram allocatedBytes;
 
-        // All these tensors have: 1 as the first dimension, maxObjects as the second dimension
-        // Boxes will have 4 as the third dimension (2 sets of (x, y) coordinates).
-        int maxObjects = (int) scoresT.shape()[1];
-        float[] scores = scoresT.copyTo(new float[1][maxObjects])[0];
-        float[] classes = classesT.copyTo(new float[1][maxObjects])[0];
-        float[][] boxes = boxesT.copyTo(new float[1][maxObjects][4])[0];
+    @PostConstruct
+    void start() {
+        this.pixelBufferPool = modelRegistry.getPixelBufferPool();
+        this.imageScaler = new ImageScaler(resizeMaxEdge, resizeInterpolation);
 
-        List<ObjectDetectionResult> results = new ArrayList<>();
+        this.allocatedBytes = metricRegistry.histogram(Metadata.builder()
+                .withName("detection.allocated-bytes")
+                .withDescription("Heap bytes allocated by the request thread for each detection")
+                .withType(MetricType.HISTOGRAM)
+                .withUnit(MetricUnits.BYTES)
+                .build());
+    }
 
-        for(int object = 0; object < maxObjects; object++) {
-            float minScore = threshold / 100f;
+    /**
+     * @return The sorted labels of the model, or null if it is unknown or not loaded
+     */
+    public List<String> getLabels(String model) {
+        LoadedModel loadedModel = modelRegistry.acquire(model);
+        if (loadedModel == null) {
+            return null;
+        }
+        try {
+            return loadedModel.getSortedLabels();
+        }
+        finally {
+            loadedModel.release();
+        }
+    }
 
-            if (scores[object] < minScore) {
-                continue;
+    /**
+     * Detect objects in an image, handing out the image as decoded and scaled for the model so it can be reused.
+     * @param model Key of the model variant to run, see {@link ModelRegistry#resolve}. Its current version is used
+     * @param rawData Raw image file
+     * @param threshold Minimum score in percent
+     * @param topK Maximum number of objects to return, 0 for no limit
+     * @param decoded Receives the image when it is decoded, which it is not when the results come from the cache.
+     *                Null if it is not needed
+     */
+    public ObjectDetectionResultComplete detect(String model, byte[] rawData, int threshold, int topK,
+                                                Consumer<BufferedImage> decoded) throws IOException, MediaTypeException {
+        long allocatedBefore = currentThreadAllocatedBytes();
+        float minScore = threshold / 100f;
+        int maxResults = topK > 0 ? topK : Integer.MAX_VALUE;
+
+        // Hold the model version for the whole detection, so a swap cannot close it underneath
+        LoadedModel loadedModel = modelRegistry.acquire(model);
+        if (loadedModel == null) {
+            throw new IllegalStateException("Model " + model + " is not loaded");
+        }
+        Timer detectionTimer = modelRegistry.getDetectionTimer(model);
+        ImageDetections detections;
+        try {
+            if (detectionResultCache.isEnabled()) {
+                // Cache every candidate for the image content, the threshold and topK are applied to the cached copy.
+                // The key includes the model version, so results of a replaced version are not served
+                String key = loadedModel.getKey() + "@" + loadedModel.getVersion() + "/"
+                        + DetectionResultCache.contentHash(rawData);
+                detections = detectionResultCache.get(key, () -> infer(loadedModel, detectionTimer, rawData, 0f,
+                        Integer.MAX_VALUE, decoded));
             }
-
-            String label = labels[(int) classes[object] - 1];
-            float score = scores[object];
-
-            float y1 = boxes[object][0];
-            float x1 = boxes[object][1];
-            float y2 = boxes[object][2];
-            float x2 = boxes[object][3];
-
-            ObjectDetectionResult result = new ObjectDetectionResult(label, score, x1, y1, x2, y2);
-            results.add(result);
+            else {
+                detections = infer(loadedModel, detectionTimer, rawData, minScore, maxResults, decoded);
+            }
+        }
+        finally {
+            loadedModel.release();
         }
 
         ObjectDetectionResultComplete objectDetectionResultComplete = new ObjectDetectionResultComplete();
-        objectDetectionResultComplete.setResults(results);
-        objectDetectionResultComplete.setMediaType(mediaType(imageInfo));
-        objectDetectionResultComplete.setWidth(imageInfo.getWidth());
-        objectDetectionResultComplete.setHeight(imageInfo.getHeight());
-
-        // Encode the data and add to the cache with a UUID reference
-        byte[] base64Data = Base64.getEncoder().encode(rawData);
+        objectDetectionResultComplete.setModel(loadedModel.getName());
+        objectDetectionResultComplete.setModelVariant(loadedModel.getVariant());
+        objectDetectionResultComplete.setModelVersion(loadedModel.getVersion());
+        objectDetectionResultComplete.setResults(detections.getResults(minScore, maxResults));
+        objectDetectionResultComplete.setMediaType(detections.getMediaType());
+        objectDetectionResultComplete.setWidth(detections.getWidth());
+        objectDetectionResultComplete.setHeight(detections.getHeight());
+        objectDetectionResultComplete.setInputWidth(detections.getInputWidth());
+        objectDetectionResultComplete.setInputHeight(detections.getInputHeight());
+
+        // Keep the image for the dashboard with a UUID reference
         String uuid = UUID.randomUUID().toString();
-        imageData.put(uuid, new String(base64Data));
+        imageStore.put(uuid, rawData, detections.getMediaType());
         objectDetectionResultComplete.setUuid(uuid);
 
+        if (allocatedBefore >= 0) {
+            allocatedBytes.update(currentThreadAllocatedBytes() - allocatedBefore);
+        }
+
         return objectDetectionResultComplete;
     }
 
-    private static String mediaType(ImageInfo imageInfo) throws MediaTypeException {
-        String extension = imageInfo.getFormat().getExtension();
-        switch(extension) {
-            case "GIF":
-                return "image/gif";
-            case "JPEG":
-                return "image/jpg";
-            case "PNG":
-                return "image/png";
-            default:
-                throw new MediaTypeException(extension + " format type is unsupported for the MediaType!");
+    /**
+     * Run an image through the original graph of a model and through its optimized graph, to check that optimizing
+     * does not change the detections and to measure what it saves. Each graph is loaded in turn with a single session,
+     * next to the version being served, and closed once it has run. Every graph runs the image once untimed, so the
+     * timed runs do not include TensorFlow setting up for its shape.
+     * @param runs Timed runs on each graph
+     */
+    public GraphComparison compare(String model, byte[] rawData, int threshold, int runs)
+            throws IOException, MediaTypeException {
+        float minScore = threshold / 100f;
+        GraphComparison comparison = new GraphComparison();
+        comparison.setModel(model);
+        comparison.setOriginal(timeGraph(model, false, rawData, minScore, runs));
+        comparison.setOptimized(timeGraph(model, true, rawData, minScore, runs));
+
+        List<ObjectDetectionResult> original = comparison.getOriginal().getResults();
+        List<ObjectDetectionResult> optimized = comparison.getOptimized().getResults();
+        boolean identical = original.size() == optimized.size();
+        float maxDifference = 0;
+        for (int i = 0; i < Math.min(original.size(), optimized.size()); i++) {
+            ObjectDetectionResult a = original.get(i);
+            ObjectDetectionResult b = optimized.get(i);
+            identical &= a.getLabel().equals(b.getLabel());
+            maxDifference = Math.max(maxDifference, Math.max(Math.abs(a.getScore() - b.getScore()),
+                    Math.max(Math.max(Math.abs(a.getX1() - b.getX1()), Math.abs(a.getY1() - b.getY1())),
+                            Math.max(Math.abs(a.getX2() - b.getX2()), Math.abs(a.getY2() - b.getY2())))));
         }
+        comparison.setIdentical(identical && maxDifference <= COMPARISON_TOLERANCE);
+        comparison.setMaxDifference(maxDifference);
+        return comparison;
     }
 
-    private static String[] loadLabels() throws IOException {
-        InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(LABEL_RESOURCE_PATH);
-        String text = CharStreams.toString( new InputStreamReader( is) );
-        StringIntLabelMapOuterClass.StringIntLabelMap.Builder builder = StringIntLabelMapOuterClass.StringIntLabelMap.newBuilder();
-        TextFormat.merge(text, builder);
-        StringIntLabelMapOuterClass.StringIntLabelMap proto = builder.build();
-        int maxId = 1;
-        for (StringIntLabelMapOuterClass.StringIntLabelMapItem item : proto.getItemList()) {
-            if (item.getId() > maxId) {
-                maxId = item.getId();
+    private GraphComparison.GraphRun timeGraph(String model, boolean optimize, byte[] rawData, float minScore,
+                                               int runs) throws IOException, MediaTypeException {
+        LoadedModel graph = modelRegistry.loadForComparison(model, optimize);
+        try {
+            ImageDetections detections = infer(graph, null, rawData, minScore, Integer.MAX_VALUE, null);
+            long[] nanos = new long[Math.max(1, runs)];
+            for (int i = 0; i < nanos.length; i++) {
+                long start = System.nanoTime();
+                infer(graph, null, rawData, minScore, Integer.MAX_VALUE, null);
+                nanos[i] = System.nanoTime() - start;
             }
+            Arrays.sort(nanos);
+            double medianMillis = nanos[nanos.length / 2] / 1e6;
+            return GraphComparison.GraphRun.of(graph, medianMillis, detections.getResults(minScore, Integer.MAX_VALUE));
         }
-        String[] ret = new String[maxId];
-        for (StringIntLabelMapOuterClass.StringIntLabelMapItem item : proto.getItemList()) {
-            ret[item.getId()-1] = item.getDisplayName();
+        finally {
+            graph.release();
         }
-        return ret;
     }
 
-    private static Tensor<UInt8> makeImageTensor(byte[] rawData, ImageInfo imageInfo) throws IOException, URISyntaxException, ImageReadException {
-        // Load the image from the raw bytes
-        BufferedImage img = Imaging.getBufferedImage(rawData);
-        // Get the image as an array of RGB integer values
-        int[] rgbInts = ((DataBufferInt) img.getData().getDataBuffer()).getData();
-        // Convert RGB values into byte[3] representation
-        byte[] rgbBytes = convertRGBstoBytes(rgbInts);
-        // Convert the RGB bytes to a ByteBuffer
-        ByteBuffer byteBuffer = ByteBuffer.wrap(rgbBytes);
-
-        final long BATCH_SIZE = 1;
-        final long CHANNELS = 3;
-        long[] shape = new long[]{BATCH_SIZE, imageInfo.getHeight(), imageInfo.getWidth(), CHANNELS};
-        return Tensor.create(UInt8.class, shape, byteBuffer);
+    /**
+     * Decode the image and run it through the model.
+     * @param detectionTimer Timer of the detection, waiting for a batch included, null to not time it
+     * @param decoded Receives the decoded and scaled image, null if it is not needed
+     */
+    private ImageDetections infer(LoadedModel model, Timer detectionTimer, byte[] rawData, float minScore, int topK,
+                                  Consumer<BufferedImage> decoded) throws IOException, MediaTypeException {
+        // Get the format and dimensions from the image header, then decode the image exactly once, letting the
+        // decoder subsample it if it will be downscaled anyway
+        ImageHeader header = ImageHeader.read(rawData);
+        int minLongEdge = resizeSubsample ? imageScaler.getMaxEdge() : 0;
+        BufferedImage img = imageScaler.fit(imageDecoders.decode(rawData, header, minLongEdge));
+        if (decoded != null) {
+            decoded.accept(img);
+        }
+
+        // Convert the decoded image into the RGB bytes fed to the model
+        ByteBuffer pixels = pixelBufferPool.acquire(pixelBufferSize(img));
+        try {
+            PixelConverter.toRgb(img, pixels);
+            pixels.flip();
+        }
+        catch (RuntimeException e) {
+            pixelBufferPool.release(pixels);
+            throw e;
+        }
+
+        // The batcher releases the pixels once the image has run, it may still be queued if detect fails early
+        List<ObjectDetectionResult> results;
+        Timer.Context detectionTime = detectionTimer != null ? detectionTimer.time() : null;
+        try {
+            results = model.getBatcher().detect(pixels, img.getHeight(), img.getWidth(), minScore, topK);
+        }
+        finally {
+            if (detectionTime != null) {
+                detectionTime.stop();
+            }
+        }
+
+        return new ImageDetections(header.getMediaType(), header.getWidth(), header.getHeight(),
+                img.getWidth(), img.getHeight(), results);
+    }
+
+    private static int pixelBufferSize(BufferedImage img) throws IOException {
+        long size = (long) img.getWidth() * img.getHeight() * CHANNELS;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Image of " + img.getWidth() + "x" + img.getHeight() + " is too large");
+        }
+        return (int) size;
     }
 
     /**
-     * Convert an array of RBG values as byte[3] representing the RGB values.
-     * @param rgbs Array of RGB values representing an image
-     * @return Converted RGB values as bytes
+     * Heap bytes allocated so far by the current thread, or -1 if the JVM does not track it.
      */
-    private static byte[] convertRGBstoBytes(int[] rgbs) {
-        byte[] byteData = new byte[rgbs.length * 3];
-        int count = 0;
-        for (int rgb : rgbs) {
-            byte r = (byte) (rgb & 0xff);
-            byte g = (byte) ((rgb & 0xff00) >> 8);
-            byte b = (byte) ((rgb & 0xff0000) >> 16);
-            byte[] bytes = new byte[]{r, g, b};
-            for (byte rgbByte : bytes) {
-                byteData[count] = rgbByte;
-                count++;
+    private static long currentThreadAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (allocationMXBean.isThreadAllocatedMemorySupported() && allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+                return allocationMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
             }
         }
-        return byteData;
+        return -1;
+    }
+
+    /**
+     * @param uuid Reference to the image data in the store
+     * @return The stored image, or null if it is no longer stored
+     */
+    public ImageStore.StoredImage getImage(String uuid) {
+        return imageStore.get(uuid);
     }
 
     /**
@@ -201,13 +276,14 @@ public class ObjectDetectionService {
      * https://github.com/quarkusio/quarkus/issues/8379
      * This feature request may not be honored if there is a performance impact on large chunk sizes, and so this
      * workaround would be reasonable.
-     * @param uuid Reference to the image data in the cache
-     * @return
+     * @param uuid Reference to the image data in the store
+     * @return Base64 encoded image data, or null if the image is no longer stored
      */
-    @CacheResult(cacheName = "image-data")
     public String getImageData(String uuid){
-        String imageDataVal = imageData.get(uuid);
-        imageData.remove(uuid); // Remove from the Map, as the value will now reside in the cache instead
-        return imageDataVal; // First result will be stored in the cache for the uuid key
+        ImageStore.StoredImage image = imageStore.get(uuid);
+        if (image == null) {
+            return null;
+        }
+        return StandardCharsets.US_ASCII.decode(Base64.getEncoder().encode(image.getData())).toString();
     }
 }
\ No newline at end of file
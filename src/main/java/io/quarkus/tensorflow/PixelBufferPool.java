@@ -0,0 +1,77 @@
+package io.quarkus.tensorflow;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable direct buffers for pixel data, bucketed by power of two capacity. Direct buffers let TensorFlow copy the
+ * pixels straight into the input tensor, and reusing them avoids allocating an image sized buffer on every request.
+ * At most maxRetainedBytes are kept for reuse; anything released beyond that is left to the garbage collector.
+ */
+public class PixelBufferPool {
+
+    private static final int MIN_BUCKET = 16; // 64 KiB
+    private static final int MAX_BUCKET = 30; // 1 GiB
+
+    private final Queue<ByteBuffer>[] buckets;
+    private final long maxRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public PixelBufferPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.buckets = new Queue[MAX_BUCKET + 1];
+        for (int bucket = MIN_BUCKET; bucket <= MAX_BUCKET; bucket++) {
+            buckets[bucket] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Take a direct buffer with at least the given capacity. The buffer is positioned at 0 with its limit set to size.
+     */
+    public ByteBuffer acquire(int size) {
+        int bucket = bucket(size);
+        if (bucket > MAX_BUCKET) {
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        ByteBuffer buffer = buckets[bucket].poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << bucket);
+        }
+        else {
+            retainedBytes.addAndGet(-buffer.capacity());
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    /**
+     * Return a buffer taken from {@link #acquire(int)} so it can be reused.
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int bucket = bucket(capacity);
+        if (bucket > MAX_BUCKET || capacity != 1 << bucket) {
+            return;
+        }
+        if (retainedBytes.addAndGet(capacity) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-capacity);
+            return;
+        }
+        buckets[bucket].offer(buffer);
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    private static int bucket(int size) {
+        if (size <= 1 << MIN_BUCKET) {
+            return MIN_BUCKET;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+}
@@ -0,0 +1,173 @@
+package io.quarkus.tensorflow;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the pixels of a decoded image into a buffer as consecutive R, G and B bytes, which is the layout the model
+ * expects for its uint8 image tensor. The raster layouts produced by the image decoders are read directly from
+ * their backing arrays one row at a time; any other layout falls back to {@link BufferedImage#getRGB}.
+ */
+public class PixelConverter {
+
+    private static final int CHANNELS = 3;
+
+    // Scratch rows reused by each thread, so conversion does not allocate per pixel or per image
+    private static final ThreadLocal<byte[]> ROW_BYTES = ThreadLocal.withInitial(() -> new byte[0]);
+    private static final ThreadLocal<int[]> ROW_INTS = ThreadLocal.withInitial(() -> new int[0]);
+
+    private PixelConverter() {
+    }
+
+    /**
+     * Convert the image into RGB bytes.
+     * @param img Decoded image
+     * @param dst Buffer receiving width * height * 3 bytes from its current position
+     */
+    public static void toRgb(BufferedImage img, ByteBuffer dst) {
+        WritableRaster raster = img.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        ColorModel colorModel = img.getColorModel();
+
+        boolean plainRaster = raster.getParent() == null
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && dataBuffer.getNumBanks() == 1 && !colorModel.isAlphaPremultiplied();
+
+        if (plainRaster && dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel
+                && isPackedRgb(colorModel)) {
+            // TYPE_INT_RGB, TYPE_INT_ARGB
+            convertPackedInts((DataBufferInt) dataBuffer, (SinglePixelPackedSampleModel) sampleModel,
+                    img.getWidth(), img.getHeight(), dst);
+        }
+        else if (plainRaster && dataBuffer instanceof DataBufferByte && sampleModel instanceof PixelInterleavedSampleModel
+                && isRgbColorSpace(colorModel) && sampleModel.getNumBands() >= 3) {
+            // TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR and byte interleaved RGB(A)
+            convertInterleavedBytes((DataBufferByte) dataBuffer, (PixelInterleavedSampleModel) sampleModel,
+                    img.getWidth(), img.getHeight(), dst);
+        }
+        else if (plainRaster && dataBuffer instanceof DataBufferByte && sampleModel instanceof ComponentSampleModel
+                && colorModel.getColorSpace().getType() == ColorSpace.TYPE_GRAY && sampleModel.getNumBands() == 1) {
+            // TYPE_BYTE_GRAY
+            convertGrayBytes((DataBufferByte) dataBuffer, (ComponentSampleModel) sampleModel,
+                    img.getWidth(), img.getHeight(), dst);
+        }
+        else {
+            convertGeneric(img, dst);
+        }
+    }
+
+    private static boolean isPackedRgb(ColorModel colorModel) {
+        if (!(colorModel instanceof DirectColorModel) || !isRgbColorSpace(colorModel)) {
+            return false;
+        }
+        DirectColorModel directColorModel = (DirectColorModel) colorModel;
+        return directColorModel.getRedMask() == 0xff0000
+                && directColorModel.getGreenMask() == 0xff00
+                && directColorModel.getBlueMask() == 0xff;
+    }
+
+    private static boolean isRgbColorSpace(ColorModel colorModel) {
+        return colorModel.getColorSpace().isCS_sRGB();
+    }
+
+    private static void convertPackedInts(DataBufferInt dataBuffer, SinglePixelPackedSampleModel sampleModel,
+                                          int width, int height, ByteBuffer dst) {
+        int[] pixels = dataBuffer.getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int offset = dataBuffer.getOffset();
+        byte[] row = rowBytes(width * CHANNELS);
+
+        for (int y = 0; y < height; y++) {
+            int src = offset + y * scanlineStride;
+            for (int x = 0, i = 0; x < width; x++) {
+                int rgb = pixels[src + x];
+                row[i++] = (byte) (rgb >> 16);
+                row[i++] = (byte) (rgb >> 8);
+                row[i++] = (byte) rgb;
+            }
+            dst.put(row, 0, width * CHANNELS);
+        }
+    }
+
+    private static void convertInterleavedBytes(DataBufferByte dataBuffer, PixelInterleavedSampleModel sampleModel,
+                                                int width, int height, ByteBuffer dst) {
+        byte[] pixels = dataBuffer.getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int[] bandOffsets = sampleModel.getBandOffsets();
+        int offset = dataBuffer.getOffset();
+        // Bands are in color model order (red, green, blue[, alpha]) whatever their position in memory
+        int red = bandOffsets[0];
+        int green = bandOffsets[1];
+        int blue = bandOffsets[2];
+        byte[] row = rowBytes(width * CHANNELS);
+
+        for (int y = 0; y < height; y++) {
+            int src = offset + y * scanlineStride;
+            for (int x = 0, i = 0; x < width; x++, src += pixelStride) {
+                row[i++] = pixels[src + red];
+                row[i++] = pixels[src + green];
+                row[i++] = pixels[src + blue];
+            }
+            dst.put(row, 0, width * CHANNELS);
+        }
+    }
+
+    private static void convertGrayBytes(DataBufferByte dataBuffer, ComponentSampleModel sampleModel,
+                                         int width, int height, ByteBuffer dst) {
+        byte[] pixels = dataBuffer.getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int offset = dataBuffer.getOffset() + sampleModel.getBandOffsets()[0];
+        byte[] row = rowBytes(width * CHANNELS);
+
+        for (int y = 0; y < height; y++) {
+            int src = offset + y * scanlineStride;
+            for (int x = 0, i = 0; x < width; x++, src += pixelStride) {
+                byte gray = pixels[src];
+                row[i++] = gray;
+                row[i++] = gray;
+                row[i++] = gray;
+            }
+            dst.put(row, 0, width * CHANNELS);
+        }
+    }
+
+    private static void convertGeneric(BufferedImage img, ByteBuffer dst) {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int[] rgbs = rowInts(width);
+        byte[] row = rowBytes(width * CHANNELS);
+
+        for (int y = 0; y < height; y++) {
+            img.getRGB(0, y, width, 1, rgbs, 0, width);
+            for (int x = 0, i = 0; x < width; x++) {
+                int rgb = rgbs[x];
+                row[i++] = (byte) (rgb >> 16);
+                row[i++] = (byte) (rgb >> 8);
+                row[i++] = (byte) rgb;
+            }
+            dst.put(row, 0, width * CHANNELS);
+        }
+    }
+
+    private static byte[] rowBytes(int length) {
+        byte[] row = ROW_BYTES.get();
+        if (row.length < length) {
+            row = new byte[length];
+            ROW_BYTES.set(row);
+        }
+        return row;
+    }
+
+    private static int[] rowInts(int length) {
+        int[] row = ROW_INTS.get();
+        if (row.length < length) {
+            row = new int[length];
+            ROW_INTS.set(row);
+        }
+        return row;
+    }
+}
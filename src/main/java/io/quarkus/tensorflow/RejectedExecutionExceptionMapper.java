@@ -0,0 +1,24 @@
+package io.quarkus.tensorflow;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Answers requests rejected by a full {@link InferenceExecutor} with 503 Service Unavailable, so clients and load
+ * balancers back off instead of waiting on an overloaded node.
+ */
+@Provider
+public class RejectedExecutionExceptionMapper implements ExceptionMapper<RejectedExecutionException> {
+
+    @Override
+    public Response toResponse(RejectedExecutionException e) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", 1)
+                .type(MediaType.TEXT_PLAIN)
+                .entity("Too many detections in progress, please retry later.")
+                .build();
+    }
+}
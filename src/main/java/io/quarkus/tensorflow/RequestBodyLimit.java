@@ -0,0 +1,63 @@
+package io.quarkus.tensorflow;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.quarkus.vertx.http.runtime.VertxHttpRecorder;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+
+/**
+ * Limits request bodies to the size of an upload, except on the bulk and camera stream endpoints, which read their
+ * body incrementally and may receive far more. Quarkus checks quarkus.http.limits.max-body-size before any route of
+ * the application, so that limit is set for the streams, and this route applies the smaller one everywhere else: a
+ * larger Content-Length is rejected with 413 straight away, and a chunked body is cut off with 413 once it exceeds
+ * the limit.
+ */
+@ApplicationScoped
+public class RequestBodyLimit {
+
+    @ConfigProperty(name = "detection.upload.max-body-mb", defaultValue = "40")
+    long maxBodyMb;
+
+    void register(@Observes Router router) {
+        long limit = maxBodyMb * 1024 * 1024;
+        // After the global limit, which runs at order -2
+        router.route().order(-1).handler(context -> limit(context, limit));
+    }
+
+    private static void limit(RoutingContext context, long limit) {
+        if (isStream(context.normalisedPath())) {
+            context.next();
+            return;
+        }
+        String contentLength = context.request().getHeader(HttpHeaderNames.CONTENT_LENGTH);
+        if (contentLength == null) {
+            // Enforced by the request input stream as the body is read
+            context.put(VertxHttpRecorder.MAX_REQUEST_SIZE_KEY, limit);
+        }
+        else if (parseLength(contentLength) > limit) {
+            context.response().putHeader(HttpHeaderNames.CONNECTION, "close");
+            context.response().setStatusCode(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE.code()).end();
+            return;
+        }
+        context.next();
+    }
+
+    static boolean isStream(String path) {
+        return path.startsWith("/object/frames/") || (path.startsWith("/object/detect/") && path.endsWith("/bulk"));
+    }
+
+    private static long parseLength(String contentLength) {
+        try {
+            return Long.parseLong(contentLength.trim());
+        }
+        catch (NumberFormatException e) {
+            // Rejected as malformed further on
+            return -1;
+        }
+    }
+}
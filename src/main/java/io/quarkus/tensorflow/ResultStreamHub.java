@@ -0,0 +1,277 @@
+package io.quarkus.tensorflow;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.vertx.ConsumeEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fans the detection results published on the result_stream address out to the SSE subscribers of the dashboard.
+ * Subscribers with the same {@link StreamFilter} form a group: each result is filtered and serialized to JSON once
+ * per group and the same bytes are written to every subscriber in it.
+ *
+ * The most recent events are kept in a ring, so a browser reconnecting with Last-Event-ID receives the events it
+ * missed. Every subscriber has a small queue of its own and is sent one event at a time: when a slow subscriber's
+ * queue is full, its oldest event is dropped, so it can never hold more than its queue in memory.
+ */
+@ApplicationScoped
+public class ResultStreamHub {
+    private static final Logger LOG = Logger.getLogger(ResultStreamHub.class.getName());
+
+    public static final String ADDRESS = "result_stream";
+
+    @ConfigProperty(name = "detection.stream.replay-size", defaultValue = "64")
+    int replaySize;
+
+    @ConfigProperty(name = "detection.stream.subscriber-buffer", defaultValue = "32")
+    int subscriberBuffer;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Map<StreamFilter, List<Subscriber>> groups = new HashMap<>(); // guarded by this
+
+    // Ring of recent results, guarded by this
+    private Published[] replay;
+    private long lastId;
+
+    private Counter dropped;
+
+    @PostConstruct
+    void start() {
+        this.replay = new Published[Math.max(1, replaySize)];
+
+        this.dropped = metricRegistry.counter(Metadata.builder()
+                .withName("stream.dropped")
+                .withDescription("Events dropped for subscribers that were too slow to keep up")
+                .withType(MetricType.COUNTER)
+                .build());
+        metricRegistry.register(Metadata.builder()
+                .withName("stream.subscribers")
+                .withDescription("Connected dashboard subscribers")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) subscribers::size);
+        metricRegistry.register(Metadata.builder()
+                .withName("stream.filter-groups")
+                .withDescription("Distinct filters among the connected dashboard subscribers")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) this::groupCount);
+        metricRegistry.register(Metadata.builder()
+                .withName("stream.max-lag")
+                .withDescription("Events queued for the subscriber that is furthest behind")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) this::maxLag);
+    }
+
+    /**
+     * Results are consumed one at a time on the event loop, so events reach each subscriber in id order. Only taking
+     * the id and a snapshot of the groups holds the lock; serializing is done outside it, so subscribing and
+     * unsubscribing are not held up by it.
+     */
+    @ConsumeEvent(ADDRESS)
+    void onResult(ObjectDetectionResultComplete result) {
+        Published published;
+        List<Map.Entry<StreamFilter, List<Subscriber>>> snapshot = new ArrayList<>();
+        synchronized (this) {
+            published = new Published(++lastId, result);
+            replay[(int) (published.id % replay.length)] = published;
+            for (Map.Entry<StreamFilter, List<Subscriber>> group : groups.entrySet()) {
+                snapshot.add(new AbstractMap.SimpleImmutableEntry<>(group.getKey(), new ArrayList<>(group.getValue())));
+            }
+        }
+        for (Map.Entry<StreamFilter, List<Subscriber>> group : snapshot) {
+            Event event = encode(published, group.getKey());
+            if (event != null) {
+                for (Subscriber subscriber : group.getValue()) {
+                    subscriber.offer(event);
+                }
+            }
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.drain();
+        }
+    }
+
+    /**
+     * Start streaming events to an SSE connection until it is closed.
+     * @param filter Events and detections the subscriber is interested in
+     * @param lastEventId Last-Event-ID sent by a reconnecting client, or null to only receive new events
+     */
+    public void subscribe(SseEventSink sink, Sse sse, StreamFilter filter, String lastEventId) {
+        Subscriber subscriber = new Subscriber(sink, sse, filter);
+        long after = parseEventId(lastEventId);
+        synchronized (this) {
+            if (after >= 0) {
+                // Oldest to newest, skipping slots that were never filled or hold events the client already has
+                for (long id = Math.max(after + 1, lastId - replay.length + 1); id <= lastId; id++) {
+                    Published published = replay[(int) (id % replay.length)];
+                    Event event = published != null && published.id == id ? encode(published, filter) : null;
+                    if (event != null) {
+                        subscriber.offer(event);
+                    }
+                }
+            }
+            groups.computeIfAbsent(filter, f -> new ArrayList<>()).add(subscriber);
+            subscribers.add(subscriber);
+        }
+        subscriber.drain();
+    }
+
+    private synchronized void unsubscribe(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        List<Subscriber> group = groups.get(subscriber.filter);
+        group.remove(subscriber);
+        if (group.isEmpty()) {
+            groups.remove(subscriber.filter);
+        }
+    }
+
+    /**
+     * @return The filtered result as an event, or null if it does not pass the filter
+     */
+    private Event encode(Published published, StreamFilter filter) {
+        ObjectDetectionResultComplete result = filter.apply(published.result);
+        if (result == null) {
+            return null;
+        }
+        try {
+            return new Event(published.id, objectMapper.writeValueAsBytes(result));
+        }
+        catch (JsonProcessingException e) {
+            LOG.log(Level.WARNING, "Could not serialize the result for " + result.getFileName(), e);
+            return null;
+        }
+    }
+
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private synchronized int groupCount() {
+        return groups.size();
+    }
+
+    private int maxLag() {
+        int lag = 0;
+        for (Subscriber subscriber : subscribers) {
+            lag = Math.max(lag, subscriber.queued());
+        }
+        return lag;
+    }
+
+    private static class Published {
+        private final long id;
+        private final ObjectDetectionResultComplete result;
+
+        private Published(long id, ObjectDetectionResultComplete result) {
+            this.id = id;
+            this.result = result;
+        }
+    }
+
+    private static class Event {
+        private final long id;
+        private final byte[] data;
+
+        private Event(long id, byte[] data) {
+            this.id = id;
+            this.data = data;
+        }
+    }
+
+    private class Subscriber {
+        private final SseEventSink sink;
+        private final Sse sse;
+        private final StreamFilter filter;
+        private final ArrayDeque<Event> queue = new ArrayDeque<>(); // guarded by this
+        private boolean sending; // guarded by this
+
+        private Subscriber(SseEventSink sink, Sse sse, StreamFilter filter) {
+            this.sink = sink;
+            this.sse = sse;
+            this.filter = filter;
+        }
+
+        private synchronized void offer(Event event) {
+            if (queue.size() >= subscriberBuffer) {
+                queue.poll();
+                dropped.inc();
+            }
+            queue.offer(event);
+        }
+
+        private synchronized int queued() {
+            return queue.size();
+        }
+
+        /**
+         * Send the next queued event unless one is still being written. The next one is sent once it completes.
+         */
+        private void drain() {
+            Event event;
+            synchronized (this) {
+                if (sending || queue.isEmpty()) {
+                    return;
+                }
+                event = queue.poll();
+                sending = true;
+            }
+            if (sink.isClosed()) {
+                unsubscribe(this);
+                return;
+            }
+            OutboundSseEvent outbound = sse.newEventBuilder()
+                    .id(Long.toString(event.id))
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(byte[].class, event.data)
+                    .build();
+            sink.send(outbound).whenComplete((ignored, e) -> {
+                if (e != null) {
+                    unsubscribe(this);
+                    sink.close();
+                    return;
+                }
+                synchronized (this) {
+                    sending = false;
+                }
+                drain();
+            });
+        }
+    }
+}
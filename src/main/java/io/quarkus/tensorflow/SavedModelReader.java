@@ -0,0 +1,122 @@
+package io.quarkus.tensorflow;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the serialized GraphDef out of a saved_model.pb as it is streamed, without parsing the SavedModel into
+ * objects or holding the whole file in memory. The GraphDef bytes, which importGraphDef needs as an array, are the
+ * only copy made; everything else in the file is skipped.
+ *
+ * The protobuf wire format is walked by hand: SavedModel.meta_graphs is field 2 and MetaGraphDef.graph_def is field 2
+ * of the first meta graph.
+ */
+public class SavedModelReader {
+
+    private static final int META_GRAPHS_FIELD = 2;
+    private static final int GRAPH_DEF_FIELD = 2;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    private final DataInputStream in;
+    private long position;
+
+    private SavedModelReader(InputStream is) {
+        this.in = new DataInputStream(new BufferedInputStream(is, 64 * 1024));
+    }
+
+    /**
+     * @return The serialized GraphDef of the first meta graph
+     */
+    public static byte[] readGraphDef(InputStream is) throws IOException {
+        return new SavedModelReader(is).findGraphDef();
+    }
+
+    private byte[] findGraphDef() throws IOException {
+        long metaGraphEnd = -1;
+        while (true) {
+            long tag = readVarint(true);
+            if (tag < 0) {
+                break;
+            }
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 0x7);
+
+            if (metaGraphEnd < 0 && field == META_GRAPHS_FIELD && wireType == WIRE_LENGTH_DELIMITED) {
+                // Step into the first MetaGraphDef
+                long length = readVarint(false);
+                metaGraphEnd = position + length;
+                continue;
+            }
+            if (metaGraphEnd >= 0 && field == GRAPH_DEF_FIELD && wireType == WIRE_LENGTH_DELIMITED) {
+                long length = readVarint(false);
+                if (length > Integer.MAX_VALUE || position + length > metaGraphEnd) {
+                    throw new IOException("Malformed GraphDef length " + length);
+                }
+                byte[] graphDef = new byte[(int) length];
+                in.readFully(graphDef);
+                return graphDef;
+            }
+            skipField(wireType);
+            if (metaGraphEnd >= 0 && position >= metaGraphEnd) {
+                break;
+            }
+        }
+        throw new IOException("No GraphDef found in the saved model");
+    }
+
+    private void skipField(int wireType) throws IOException {
+        switch (wireType) {
+            case WIRE_VARINT:
+                readVarint(false);
+                break;
+            case WIRE_FIXED64:
+                skip(8);
+                break;
+            case WIRE_LENGTH_DELIMITED:
+                skip(readVarint(false));
+                break;
+            case WIRE_FIXED32:
+                skip(4);
+                break;
+            default:
+                throw new IOException("Unsupported wire type " + wireType + " at offset " + position);
+        }
+    }
+
+    private void skip(long n) throws IOException {
+        ByteStreams.skipFully(in, n);
+        position += n;
+    }
+
+    /**
+     * @param endAllowed Whether the end of the stream may be reached before the first byte
+     * @return The varint, or -1 at the end of the stream if allowed
+     */
+    private long readVarint(boolean endAllowed) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (endAllowed && shift == 0) {
+                    return -1;
+                }
+                throw new EOFException("Truncated varint at offset " + position);
+            }
+            position++;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint at offset " + position);
+    }
+}
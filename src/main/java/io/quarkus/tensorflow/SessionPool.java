@@ -0,0 +1,116 @@
+package io.quarkus.tensorflow;
+
+import org.tensorflow.Graph;
+import org.tensorflow.Session;
+import org.tensorflow.framework.ConfigProto;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A fixed set of sessions sharing one imported graph, so several narrow sessions can run side by side instead of one
+ * wide session that every request thread contends on. Callers lease the session with the fewest runs in flight.
+ *
+ * Sessions are created with use_per_session_threads, which gives each one an inter-op pool of its own. The intra-op
+ * pool is not isolated by that: TensorFlow keeps a single process wide intra-op pool for the CPU device, sized by the
+ * first session created, and every session of every model shares it. Setting the environment variable
+ * TF_OVERRIDE_GLOBAL_THREADPOOL=1 makes TensorFlow give each session its own intra-op pool as well.
+ */
+public class SessionPool implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(SessionPool.class.getName());
+
+    private final PooledSession[] sessions;
+    private final AtomicInteger nextStart = new AtomicInteger();
+
+    /**
+     * @param graph Graph shared by all sessions
+     * @param size Number of sessions
+     * @param intraOpThreads Threads used to parallelize a single op, 0 lets TensorFlow decide. Only per session with
+     *                       TF_OVERRIDE_GLOBAL_THREADPOOL=1, otherwise it sizes the shared pool if this is the first
+     *                       session created
+     * @param interOpThreads Threads used to run independent ops per session, 0 lets TensorFlow decide
+     */
+    public SessionPool(Graph graph, int size, int intraOpThreads, int interOpThreads) {
+        byte[] config = ConfigProto.newBuilder()
+                .setIntraOpParallelismThreads(Math.max(0, intraOpThreads))
+                .setInterOpParallelismThreads(Math.max(0, interOpThreads))
+                .setUsePerSessionThreads(true)
+                .build()
+                .toByteArray();
+
+        this.sessions = new PooledSession[Math.max(1, size)];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = new PooledSession(new Session(graph, config));
+        }
+        LOG.info("Created " + sessions.length + " TensorFlow sessions (intra-op threads: " + intraOpThreads
+                + ", inter-op threads: " + interOpThreads + ")");
+    }
+
+    public int size() {
+        return sessions.length;
+    }
+
+    /**
+     * Lease the least busy session. The lease must be closed once the run has completed.
+     */
+    public Lease lease() {
+        // Rotate the starting point so ties do not always favour the first session
+        int start = Math.floorMod(nextStart.getAndIncrement(), sessions.length);
+        PooledSession leastBusy = sessions[start];
+        for (int i = 1; i < sessions.length && leastBusy.inFlight.get() > 0; i++) {
+            PooledSession candidate = sessions[(start + i) % sessions.length];
+            if (candidate.inFlight.get() < leastBusy.inFlight.get()) {
+                leastBusy = candidate;
+            }
+        }
+        leastBusy.inFlight.incrementAndGet();
+        return new Lease(leastBusy);
+    }
+
+    /**
+     * Lease a specific session, however busy it is.
+     * @param index Index of the session, below {@link #size()}
+     */
+    public Lease lease(int index) {
+        PooledSession pooledSession = sessions[index];
+        pooledSession.inFlight.incrementAndGet();
+        return new Lease(pooledSession);
+    }
+
+    @Override
+    public void close() {
+        for (PooledSession pooledSession : sessions) {
+            pooledSession.session.close();
+        }
+    }
+
+    private static class PooledSession {
+        private final Session session;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private PooledSession(Session session) {
+            this.session = session;
+        }
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final PooledSession pooledSession;
+        private boolean closed;
+
+        private Lease(PooledSession pooledSession) {
+            this.pooledSession = pooledSession;
+        }
+
+        public Session session() {
+            return pooledSession.session;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                pooledSession.inFlight.decrementAndGet();
+            }
+        }
+    }
+}
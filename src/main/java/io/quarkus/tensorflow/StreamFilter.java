@@ -0,0 +1,94 @@
+package io.quarkus.tensorflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Filter of a dashboard subscription: only detections of the given labels scoring at least the minimum are kept, and
+ * only results with at least the minimum number of such detections are sent. Filters are compared by value, so
+ * subscribers asking for the same thing can share one filtered and serialized copy of every event.
+ */
+public class StreamFilter {
+
+    public static final StreamFilter NONE = new StreamFilter(Collections.emptySet(), 0f, 0);
+
+    private final Set<String> labels;
+    private final float minScore;
+    private final int minObjects;
+
+    private StreamFilter(Set<String> labels, float minScore, int minObjects) {
+        this.labels = labels;
+        this.minScore = minScore;
+        this.minObjects = minObjects;
+    }
+
+    /**
+     * @param labels Comma separated labels to keep, null or empty for all of them
+     * @param minScore Minimum score in percent
+     * @param minObjects Minimum number of detections left after filtering
+     */
+    public static StreamFilter of(String labels, int minScore, int minObjects) {
+        Set<String> labelSet = new TreeSet<>();
+        if (labels != null) {
+            for (String label : labels.split(",")) {
+                if (!label.trim().isEmpty()) {
+                    labelSet.add(label.trim());
+                }
+            }
+        }
+        StreamFilter filter = new StreamFilter(Collections.unmodifiableSet(labelSet), Math.max(0, minScore) / 100f,
+                Math.max(0, minObjects));
+        return filter.equals(NONE) ? NONE : filter;
+    }
+
+    /**
+     * @return The result itself when nothing is filtered out, a copy holding only the matching detections, or null
+     *         if the result should not be sent at all
+     */
+    public ObjectDetectionResultComplete apply(ObjectDetectionResultComplete result) {
+        if (this == NONE) {
+            return result;
+        }
+        List<ObjectDetectionResult> matching = new ArrayList<>();
+        for (ObjectDetectionResult detection : result.getResults()) {
+            if (detection.getScore() >= minScore && (labels.isEmpty() || labels.contains(detection.getLabel()))) {
+                matching.add(detection);
+            }
+        }
+        if (matching.size() < minObjects) {
+            return null;
+        }
+        if (matching.size() == result.getResults().size()) {
+            return result;
+        }
+        ObjectDetectionResultComplete filtered = new ObjectDetectionResultComplete(result);
+        filtered.setResults(matching);
+        return filtered;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StreamFilter)) {
+            return false;
+        }
+        StreamFilter other = (StreamFilter) o;
+        return minScore == other.minScore && minObjects == other.minObjects && labels.equals(other.labels);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(labels, minScore, minObjects);
+    }
+
+    @Override
+    public String toString() {
+        return "labels=" + labels + ", minScore=" + minScore + ", minObjects=" + minObjects;
+    }
+}
@@ -0,0 +1,184 @@
+package io.quarkus.tensorflow;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.tensorflow.Tensor;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the native memory held by tensors. Tensors live outside the Java heap and are only freed when closed, so
+ * every tensor of a run is created through a {@link TensorLease} that closes them all at the end of the run.
+ *
+ * Input tensors are admitted against a global native memory budget. When the budget is exhausted, creating a tensor
+ * either blocks until enough memory is released or fails straight away, depending on the configured policy.
+ */
+@ApplicationScoped
+public class TensorLeaseManager {
+
+    @ConfigProperty(name = "detection.tensors.max-native-mb", defaultValue = "0")
+    long maxNativeMb;
+
+    @ConfigProperty(name = "detection.tensors.budget-policy", defaultValue = "block")
+    String budgetPolicy;
+
+    @ConfigProperty(name = "detection.tensors.max-wait-millis", defaultValue = "1000")
+    long maxWaitMillis;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    private final Object lock = new Object();
+    private long nativeBytes; // guarded by lock
+    private final AtomicInteger liveTensors = new AtomicInteger();
+
+    private long maxNativeBytes;
+    private boolean blockWhenExhausted;
+
+    @PostConstruct
+    void registerMetrics() {
+        this.maxNativeBytes = maxNativeMb * 1024 * 1024;
+        switch (budgetPolicy) {
+            case "block":
+                blockWhenExhausted = true;
+                break;
+            case "reject":
+                blockWhenExhausted = false;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown tensor budget policy " + budgetPolicy
+                        + ", expected block or reject");
+        }
+
+        metricRegistry.register(Metadata.builder()
+                .withName("tensors.live")
+                .withDescription("Tensors currently holding native memory")
+                .withType(MetricType.GAUGE)
+                .build(), (Gauge<Integer>) liveTensors::get);
+        metricRegistry.register(Metadata.builder()
+                .withName("tensors.native-bytes")
+                .withDescription("Native memory currently held by tensors")
+                .withType(MetricType.GAUGE)
+                .withUnit(MetricUnits.BYTES)
+                .build(), (Gauge<Long>) this::getNativeBytes);
+    }
+
+    /**
+     * Open a lease owning the tensors of one run. It must be closed once their contents have been read.
+     */
+    public TensorLease lease() {
+        return new TensorLease();
+    }
+
+    public long getNativeBytes() {
+        synchronized (lock) {
+            return nativeBytes;
+        }
+    }
+
+    private void reserve(long bytes) throws NativeMemoryExceededException {
+        synchronized (lock) {
+            if (maxNativeBytes > 0) {
+                if (bytes > maxNativeBytes) {
+                    throw new NativeMemoryExceededException("Tensor of " + bytes
+                            + " bytes is larger than the native memory budget of " + maxNativeBytes + " bytes");
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                while (nativeBytes + bytes > maxNativeBytes) {
+                    long remaining = deadline - System.nanoTime();
+                    if (!blockWhenExhausted || remaining <= 0) {
+                        throw new NativeMemoryExceededException("Native memory budget of " + maxNativeBytes
+                                + " bytes for tensors is exhausted");
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new NativeMemoryExceededException("Interrupted while waiting for native memory");
+                    }
+                }
+            }
+            nativeBytes += bytes;
+        }
+    }
+
+    private void release(long bytes) {
+        synchronized (lock) {
+            nativeBytes -= bytes;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Owns the tensors created or returned during one run and releases them, and their share of the budget, on close.
+     */
+    public class TensorLease implements AutoCloseable {
+        private final List<Tensor<?>> tensors = new ArrayList<>();
+        private long bytes;
+
+        private TensorLease() {
+        }
+
+        /**
+         * Create a tensor, waiting for or failing on the native memory budget first.
+         */
+        public <T> Tensor<T> create(Class<T> type, long[] shape, ByteBuffer data) throws NativeMemoryExceededException {
+            long size = data.remaining();
+            reserve(size);
+            Tensor<T> tensor;
+            try {
+                tensor = Tensor.create(type, shape, data);
+            }
+            catch (RuntimeException e) {
+                release(size);
+                throw e;
+            }
+            track(tensor, size);
+            return tensor;
+        }
+
+        /**
+         * Take ownership of tensors that already exist, such as the outputs of a session run. They are accounted for
+         * but never rejected, since their memory is already allocated.
+         */
+        public List<Tensor<?>> adopt(List<Tensor<?>> outputs) {
+            for (Tensor<?> output : outputs) {
+                long size = output.numBytes();
+                synchronized (lock) {
+                    nativeBytes += size;
+                }
+                track(output, size);
+            }
+            return outputs;
+        }
+
+        private void track(Tensor<?> tensor, long size) {
+            tensors.add(tensor);
+            bytes += size;
+            liveTensors.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            for (Tensor<?> tensor : tensors) {
+                tensor.close();
+            }
+            liveTensors.addAndGet(-tensors.size());
+            tensors.clear();
+            release(bytes);
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package io.quarkus.tensorflow;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import javax.inject.Inject;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small JPEG thumbnails of the uploaded images for the dashboard, so it does not have to download the originals.
+ * Thumbnails are scaled down from the image already decoded for the model by the detecting thread, so only thumbnail
+ * sized images wait in the queue, then compressed on a single low priority thread and kept in the {@link ImageStore}
+ * next to the original. The queue in front of the thread is bounded: when it is full the thumbnail is skipped and the
+ * dashboard falls back to the original image.
+ */
+@ApplicationScoped
+public class ThumbnailService {
+    private static final Logger LOG = Logger.getLogger(ThumbnailService.class.getName());
+
+    private static final String MEDIA_TYPE = "image/jpeg";
+
+    @ConfigProperty(name = "detection.thumbnail.max-edge", defaultValue = "0")
+    int maxEdge;
+
+    @ConfigProperty(name = "detection.thumbnail.quality", defaultValue = "0.7")
+    float quality;
+
+    @ConfigProperty(name = "detection.thumbnail.queue-size", defaultValue = "32")
+    int queueSize;
+
+    @Inject
+    ImageStore imageStore;
+
+    @Inject
+    MetricRegistry metricRegistry;
+
+    private ThreadPoolExecutor executor;
+    private ImageScaler imageScaler;
+
+    private Counter created;
+    private Counter skipped;
+
+    @PostConstruct
+    void start() {
+        if (maxEdge <= 0) {
+            return;
+        }
+        this.imageScaler = new ImageScaler(maxEdge, "bilinear");
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.created = metricRegistry.counter(counter("thumbnails.created", "Thumbnails created for the dashboard"));
+        this.skipped = metricRegistry.counter(counter("thumbnails.skipped",
+                "Thumbnails skipped because the queue was full or the image could not be encoded"));
+    }
+
+    private static Metadata counter(String name, String description) {
+        return Metadata.builder().withName(name).withDescription(description).withType(MetricType.COUNTER).build();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queue a thumbnail of a stored image.
+     * @param uuid Reference of the original image in the store
+     * @param image Image as decoded and scaled for the model, it must not be modified afterwards
+     * @return A future completed with whether the thumbnail was stored. It never fails.
+     */
+    public CompletableFuture<Boolean> create(String uuid, BufferedImage image) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        if (executor == null) {
+            future.complete(false);
+            return future;
+        }
+        if (executor.getQueue().remainingCapacity() == 0) {
+            // Not worth scaling an image that would be rejected
+            skipped.inc();
+            future.complete(false);
+            return future;
+        }
+        BufferedImage thumbnail = toRgb(imageScaler.fit(image));
+        try {
+            executor.execute(() -> {
+                try {
+                    imageStore.put(thumbnailKey(uuid), encode(thumbnail), MEDIA_TYPE);
+                    created.inc();
+                    future.complete(true);
+                }
+                catch (IOException | RuntimeException e) {
+                    LOG.log(Level.FINE, "Could not create a thumbnail for " + uuid, e);
+                    skipped.inc();
+                    future.complete(false);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            skipped.inc();
+            future.complete(false);
+        }
+        return future;
+    }
+
+    /**
+     * @param uuid Reference of the original image in the store
+     * @return The thumbnail, or null if there is none
+     */
+    public ImageStore.StoredImage getThumbnail(String uuid) {
+        return uuid != null ? imageStore.get(thumbnailKey(uuid)) : null;
+    }
+
+    private static String thumbnailKey(String uuid) {
+        return uuid + "/thumbnail";
+    }
+
+    /**
+     * Compress the thumbnail as JPEG.
+     */
+    private byte[] encode(BufferedImage img) throws IOException {
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(img, null, null), param);
+        }
+        finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * JPEG has no alpha channel, so images that were not scaled (and may still have one) are drawn onto RGB first.
+     */
+    private static BufferedImage toRgb(BufferedImage img) {
+        if (img.getType() == BufferedImage.TYPE_INT_RGB || img.getType() == BufferedImage.TYPE_3BYTE_BGR
+                || img.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return img;
+        }
+        BufferedImage rgb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.drawImage(img, 0, 0, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+}
@@ -1,7 +1,7 @@
 var cardCount = 0;
 
 if (!!window.EventSource) {
-    var eventSource = new EventSource("/object/stream");
+    var eventSource = new EventSource("/object/stream" + window.location.search); // e.g. ?labels=person,car&minScore=80
     eventSource.onmessage = function(event) {
         data = JSON.parse(event.data);
         showResult(data);
@@ -63,22 +63,13 @@ function doSubmit() {
 }
 
 function showResult(response) {
-    var uuid = response.uuid;
-
-    $.get('/object/data?uuid=' + uuid,
-        function(data, textStatus, jqXHR) { // success callback
-            if (data.error != null) {
-                $("#alert").addClass("show");
-            } else {
-                displayResult(response, data);
-            }
-        });
+    var imageUrl = '/object/image/' + response.uuid;
+    displayResult(response, response.thumbnail ? imageUrl + '/thumbnail' : imageUrl);
 }
 
-function displayResult(response, data) {
+function displayResult(response, imageUrl) {
     var html = '';
     var results = response.results;
-    var mediaType = response.mediaType;
 
     var imageWidth = response.width;
     var imageHeight = response.height;
@@ -90,7 +81,7 @@ function displayResult(response, data) {
     if(results.length == 0) return;
 
     $('#cards').prepend('<div class="card w-300"><div id="card-' + cardCount + '" style="position: relative"></div><div class="card-body" id="card-body-' + cardCount + '"></div></div>');
-    $('#card-' + cardCount).append('<img class="card-img-top" width="' + imageWidth + '" src="data:' + mediaType + ';base64,' + data + '">');
+    $('#card-' + cardCount).append('<img class="card-img-top" width="' + imageWidth + '" src="' + imageUrl + '">');
 
     for (var i = 0; i < results.length; i++) {
 
@@ -0,0 +1,102 @@
+package io.quarkus.tensorflow;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void testQueueDepthIsBounded() {
+        AdmissionController controller = controller(2, 3, 0);
+
+        // Two running on the inference threads and three queued behind them
+        for (int i = 0; i < 5; i++) {
+            assertTrue(controller.tryAdmit());
+        }
+        assertFalse(controller.tryAdmit());
+
+        controller.cancel();
+        assertTrue(controller.tryAdmit());
+    }
+
+    @Test
+    public void testConcurrentAdmissionsDoNotOvershoot() throws InterruptedException {
+        AdmissionController controller = controller(2, 6, 0);
+        int callers = 64;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger admitted = new AtomicInteger();
+        try {
+            for (int i = 0; i < callers; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (controller.tryAdmit()) {
+                        admitted.incrementAndGet();
+                    }
+                });
+            }
+            start.countDown();
+        }
+        finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(8, admitted.get());
+    }
+
+    @Test
+    public void testSlowDetectionsAreShed() {
+        AdmissionController controller = controller(1, 0, 50);
+        assertTrue(controller.tryAdmit());
+
+        controller.complete(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(200));
+
+        // A new detection would take about as long as the last one, above the target
+        assertFalse(controller.tryAdmit());
+        assertTrue(controller.retryAfterSeconds() >= 1);
+    }
+
+    @Test
+    public void testEstimatedWaitCountsQueuedDetections() {
+        AdmissionController controller = controller(2, 0, 0);
+        assertTrue(controller.tryAdmit());
+        controller.complete(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, controller.estimatedWaitMillis());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(controller.tryAdmit());
+        }
+
+        // Three detections ahead of the next one, drained by two threads at about 100 ms each
+        long estimate = controller.estimatedWaitMillis();
+        assertTrue(estimate >= 150 && estimate <= 160, "Estimated " + estimate + " ms");
+    }
+
+    private static AdmissionController controller(int threads, int maxQueueDepth, long latencyTargetMillis) {
+        InferenceExecutor inferenceExecutor = new InferenceExecutor();
+        inferenceExecutor.threads = threads;
+
+        AdmissionController controller = new AdmissionController();
+        controller.inferenceExecutor = inferenceExecutor;
+        controller.metricRegistry = new MetricsRegistryImpl();
+        controller.maxQueueDepth = maxQueueDepth;
+        controller.latencyTargetMillis = latencyTargetMillis;
+        controller.registerMetrics();
+        return controller;
+    }
+}
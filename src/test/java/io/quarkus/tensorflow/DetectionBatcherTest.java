@@ -0,0 +1,235 @@
+package io.quarkus.tensorflow;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import org.eclipse.microprofile.metrics.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.tensorflow.DataType;
+import org.tensorflow.Graph;
+import org.tensorflow.Output;
+import org.tensorflow.Tensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the batcher against a tiny graph with the inputs and outputs of the detection model. Each image is one pixel
+ * high and has one pixel per candidate: red is the score in percent, green the class, and the blue channel of the
+ * first pixel is num_detections. The box of a candidate is its red, green and blue value followed by the number of
+ * images in the run, so x2 tells which images were stacked together.
+ */
+public class DetectionBatcherTest {
+
+    private static final int OBJECTS = 3;
+    private static final String[] LABELS = {"person", "bicycle", "car", "dog"};
+
+    private Graph graph;
+    private SessionPool sessionPool;
+    private PixelBufferPool pixelBufferPool;
+    private Timer inferenceTimer;
+    private DetectionBatcher batcher;
+
+    @BeforeEach
+    public void createGraph() {
+        graph = detectionGraph();
+        sessionPool = new SessionPool(graph, 1, 1, 1);
+        pixelBufferPool = new PixelBufferPool(1024 * 1024);
+        inferenceTimer = new MetricsRegistryImpl().timer("inference");
+    }
+
+    @AfterEach
+    public void close() {
+        if (batcher != null) {
+            batcher.close();
+        }
+        sessionPool.close();
+        graph.close();
+    }
+
+    @Test
+    public void testImagesOfTheSameShapeShareOneRun() {
+        batcher = batcher(4, 5000, 10000);
+
+        // The fourth image is wider, so it cannot be stacked with the others
+        List<CompletableFuture<List<ObjectDetectionResult>>> results = new ArrayList<>();
+        results.add(detectAsync(0f, OBJECTS, new int[]{90, 1, 1}, new int[]{10, 2, 0}, new int[]{5, 3, 0}));
+        results.add(detectAsync(0f, OBJECTS, new int[]{80, 2, 2}, new int[]{70, 3, 0}, new int[]{10, 1, 0}));
+        results.add(detectAsync(0f, OBJECTS, new int[]{60, 4, 1}, new int[]{0, 1, 0}, new int[]{0, 1, 0}));
+        results.add(detectAsync(0f, OBJECTS, new int[]{50, 2, 1}, new int[]{40, 1, 0}, new int[]{30, 1, 0},
+                new int[]{20, 1, 0}));
+
+        assertDetections(results.get(0).join(), "person:0.9");
+        assertDetections(results.get(1).join(), "bicycle:0.8", "car:0.7");
+        assertDetections(results.get(2).join(), "dog:0.6");
+        assertDetections(results.get(3).join(), "bicycle:0.5");
+        assertEquals(2, inferenceTimer.getCount());
+
+        ObjectDetectionResult stacked = results.get(1).join().get(0);
+        assertEquals(80, stacked.getY1());
+        assertEquals(2, stacked.getX1());
+        assertEquals(2, stacked.getY2());
+        assertEquals(3, stacked.getX2());
+        assertEquals(3, results.get(2).join().get(0).getX2());
+        assertEquals(1, results.get(3).join().get(0).getX2());
+    }
+
+    @Test
+    public void testScoreCutoffTopKAndNumDetections() throws IOException {
+        batcher = batcher(1, 0, 10000);
+        int[][] candidates = {{90, 1, 2}, {60, 2, 0}, {30, 3, 0}};
+
+        assertDetections(detect(0f, OBJECTS, candidates), "person:0.9", "bicycle:0.6");
+        assertDetections(detect(0.5f, OBJECTS, new int[]{90, 1, 3}, new int[]{60, 2, 0}, new int[]{30, 3, 0}),
+                "person:0.9", "bicycle:0.6");
+        assertDetections(detect(0f, 1, new int[]{90, 1, 3}, new int[]{60, 2, 0}, new int[]{30, 3, 0}),
+                "person:0.9");
+        assertDetections(detect(0.95f, OBJECTS, candidates));
+        assertEquals(4, inferenceTimer.getCount());
+    }
+
+    @Test
+    public void testWaitingIsBoundedByTheTimeout() {
+        // A lone image waits for a second one far longer than the timeout
+        batcher = batcher(2, 60000, 100);
+
+        IOException e = assertThrows(IOException.class, () -> detect(0f, OBJECTS, new int[]{90, 1, 1}));
+
+        assertTrue(e.getMessage().contains("100ms"), e.getMessage());
+        assertEquals(0, inferenceTimer.getCount());
+    }
+
+    @Test
+    public void testCloseFailsCollectedAndLaterImages() throws InterruptedException {
+        // The batch waits for a third image, the first two are collected but not running yet
+        batcher = batcher(3, 60000, 10000);
+        CompletableFuture<List<ObjectDetectionResult>> first = detectAsync(0f, OBJECTS, new int[]{90, 1, 1});
+        CompletableFuture<List<ObjectDetectionResult>> second = detectAsync(0f, OBJECTS, new int[]{80, 1, 1});
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        batcher.close();
+
+        for (CompletableFuture<List<ObjectDetectionResult>> result : Arrays.asList(first, second)) {
+            CompletionException e = assertThrows(CompletionException.class, result::join);
+            assertTrue(e.getCause() instanceof IllegalStateException, e.getCause().toString());
+        }
+        assertThrows(IOException.class, () -> detect(0f, OBJECTS, new int[]{90, 1, 1}));
+        assertEquals(0, inferenceTimer.getCount());
+    }
+
+    private DetectionBatcher batcher(int maxBatchSize, long maxWaitMillis, long timeoutMillis) {
+        TensorLeaseManager tensorLeaseManager = new TensorLeaseManager();
+        tensorLeaseManager.metricRegistry = new MetricsRegistryImpl();
+        tensorLeaseManager.budgetPolicy = "reject";
+        tensorLeaseManager.registerMetrics();
+        return new DetectionBatcher(sessionPool, pixelBufferPool, tensorLeaseManager, LABELS, maxBatchSize,
+                maxWaitMillis, timeoutMillis, inferenceTimer);
+    }
+
+    private CompletableFuture<List<ObjectDetectionResult>> detectAsync(float minScore, int topK, int[]... pixels) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return detect(minScore, topK, pixels);
+            }
+            catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private List<ObjectDetectionResult> detect(float minScore, int topK, int[]... pixels) throws IOException {
+        ByteBuffer buffer = pixelBufferPool.acquire(pixels.length * 3);
+        for (int[] pixel : pixels) {
+            for (int channel : pixel) {
+                buffer.put((byte) channel);
+            }
+        }
+        buffer.flip();
+        return batcher.detect(buffer, 1, pixels.length, minScore, topK);
+    }
+
+    private static void assertDetections(List<ObjectDetectionResult> results, String... expected) {
+        List<String> actual = new ArrayList<>();
+        for (ObjectDetectionResult result : results) {
+            actual.add(result.getLabel() + ":" + Math.round(result.getScore() * 100) / 100f);
+        }
+        assertEquals(Arrays.asList(expected), actual);
+    }
+
+    /**
+     * The graph takes images of any width, an image with more candidates is simply of another shape.
+     */
+    private static Graph detectionGraph() {
+        Graph g = new Graph();
+        Output<?> image = g.opBuilder("Placeholder", DetectionBatcher.INPUT_NODE)
+                .setAttr("dtype", DataType.UINT8)
+                .build().output(0);
+        Output<?> pixels = g.opBuilder("Cast", "pixels")
+                .addInput(image)
+                .setAttr("DstT", DataType.FLOAT)
+                .build().output(0);
+
+        // [N, 1, W, 3] to [N, W, 3]
+        Output<?> candidates = squeeze(g, "candidates", pixels, 1);
+        Output<?> red = slice(g, "red", candidates, new int[]{0, 0, 0}, new int[]{-1, -1, 1});
+        Output<?> green = slice(g, "green", candidates, new int[]{0, 0, 1}, new int[]{-1, -1, 1});
+        Output<?> blue = slice(g, "blue", candidates, new int[]{0, 0, 2}, new int[]{-1, 1, 1});
+
+        // The batch size as a float, repeated for every candidate
+        Output<?> batchSize = g.opBuilder("Cast", "batch_size")
+                .addInput(g.opBuilder("StridedSlice", "batch_dim")
+                        .addInput(g.opBuilder("Shape", "pixels_shape").addInput(pixels).build().output(0))
+                        .addInput(constant(g, "batch_dim_begin", new int[]{0}))
+                        .addInput(constant(g, "batch_dim_end", new int[]{1}))
+                        .addInput(constant(g, "batch_dim_strides", new int[]{1}))
+                        .setAttr("shrink_axis_mask", 1L)
+                        .build().output(0))
+                .setAttr("DstT", DataType.FLOAT)
+                .build().output(0);
+        Output<?> runSize = g.opBuilder("Add", "run_size")
+                .addInput(g.opBuilder("ZerosLike", "zeros").addInput(red).build().output(0))
+                .addInput(batchSize)
+                .build().output(0);
+
+        g.opBuilder("Mul", "detection_scores")
+                .addInput(squeeze(g, "red_squeezed", red, 2))
+                .addInput(constant(g, "hundredth", 0.01f))
+                .build();
+        squeeze(g, "detection_classes", green, 2);
+        g.opBuilder("ConcatV2", "detection_boxes")
+                .addInputList(new Output<?>[]{candidates, runSize})
+                .addInput(constant(g, "boxes_axis", 2))
+                .build();
+        squeeze(g, "num_detections", blue, 1, 2);
+        return g;
+    }
+
+    private static Output<?> squeeze(Graph g, String name, Output<?> input, long... dims) {
+        return g.opBuilder("Squeeze", name).addInput(input).setAttr("squeeze_dims", dims).build().output(0);
+    }
+
+    private static Output<?> slice(Graph g, String name, Output<?> input, int[] begin, int[] size) {
+        return g.opBuilder("Slice", name)
+                .addInput(input)
+                .addInput(constant(g, name + "_begin", begin))
+                .addInput(constant(g, name + "_size", size))
+                .build().output(0);
+    }
+
+    private static Output<?> constant(Graph g, String name, Object value) {
+        try (Tensor<?> tensor = Tensor.create(value)) {
+            return g.opBuilder("Const", name)
+                    .setAttr("dtype", tensor.dataType())
+                    .setAttr("value", tensor)
+                    .build().output(0);
+        }
+    }
+}
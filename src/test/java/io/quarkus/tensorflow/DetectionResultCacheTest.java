@@ -0,0 +1,138 @@
+package io.quarkus.tensorflow;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DetectionResultCacheTest {
+
+    @Test
+    public void testConcurrentCallersShareOneInFlightDetection() throws Exception {
+        DetectionResultCache cache = cache(10);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ImageDetections detections = detections();
+
+        CompletableFuture<ImageDetections> first = getAsync(cache, "hash", () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            finish.await();
+            return detections;
+        });
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<ImageDetections> second = getAsync(cache, "hash", () -> {
+            loads.incrementAndGet();
+            return detections();
+        });
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertFalse(second.isDone());
+
+        finish.countDown();
+
+        assertSame(detections, first.get(5, TimeUnit.SECONDS));
+        assertSame(detections, second.get(5, TimeUnit.SECONDS));
+        assertSame(detections, cache.get("hash", () -> fail("Cached detection was loaded again")));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testFailureReachesEveryWaitingCallerAndIsNotCached() throws Exception {
+        DetectionResultCache cache = cache(10);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        CompletableFuture<ImageDetections> first = getAsync(cache, "hash", () -> {
+            loading.countDown();
+            finish.await();
+            throw new MediaTypeException("Unsupported image type");
+        });
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<ImageDetections> second = getAsync(cache, "hash", DetectionResultCacheTest::detections);
+        TimeUnit.MILLISECONDS.sleep(100);
+        finish.countDown();
+
+        for (CompletableFuture<ImageDetections> result : new CompletableFuture[]{first, second}) {
+            CompletionException e = assertThrows(CompletionException.class, result::join);
+            assertTrue(e.getCause() instanceof MediaTypeException, e.getCause().toString());
+        }
+        ImageDetections detections = detections();
+        assertSame(detections, cache.get("hash", () -> detections));
+    }
+
+    @Test
+    public void testDisabledCacheAlwaysLoads() throws Exception {
+        DetectionResultCache cache = cache(0);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("hash", () -> {
+            loads.incrementAndGet();
+            return detections();
+        });
+        cache.get("hash", () -> {
+            loads.incrementAndGet();
+            return detections();
+        });
+
+        assertFalse(cache.isEnabled());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testContentHashDependsOnTheBytes() {
+        assertEquals(DetectionResultCache.contentHash(new byte[]{1, 2, 3}),
+                DetectionResultCache.contentHash(new byte[]{1, 2, 3}));
+        assertNotEquals(DetectionResultCache.contentHash(new byte[]{1, 2, 3}),
+                DetectionResultCache.contentHash(new byte[]{1, 2, 4}));
+    }
+
+    /**
+     * A loader that may block, the latch is awaited on the loading thread.
+     */
+    @FunctionalInterface
+    private interface BlockingLoader {
+        ImageDetections load() throws IOException, MediaTypeException, InterruptedException;
+    }
+
+    private static CompletableFuture<ImageDetections> getAsync(DetectionResultCache cache, String hash,
+                                                               BlockingLoader loader) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.get(hash, () -> {
+                    try {
+                        return loader.load();
+                    }
+                    catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                });
+            }
+            catch (IOException | MediaTypeException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static DetectionResultCache cache(long maximumSize) {
+        DetectionResultCache cache = new DetectionResultCache();
+        cache.maximumSize = maximumSize;
+        cache.expireAfterWrite = Duration.ofMinutes(10);
+        cache.metricRegistry = new MetricsRegistryImpl();
+        cache.createCache();
+        return cache;
+    }
+
+    private static ImageDetections detections() {
+        return new ImageDetections("image/jpeg", 640, 480, 640, 480, Collections.emptyList());
+    }
+}
@@ -0,0 +1,135 @@
+package io.quarkus.tensorflow;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameStreamReaderTest {
+
+    private static final int MAX_FRAME_BYTES = 1024;
+
+    @Test
+    public void testLengthPrefixedFrames() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(3);
+        out.write(new byte[]{1, 2, 3});
+        out.writeInt(0);
+        out.writeInt(2);
+        out.write(new byte[]{4, 5});
+
+        FrameStreamReader reader = lengthPrefixed(stream.toByteArray());
+
+        assertArrayEquals(new byte[]{1, 2, 3}, reader.next());
+        assertArrayEquals(new byte[0], reader.next());
+        assertArrayEquals(new byte[]{4, 5}, reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testLengthPrefixedFrameTooLarge() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new DataOutputStream(stream).writeInt(MAX_FRAME_BYTES + 1);
+
+        assertThrows(IOException.class, () -> lengthPrefixed(stream.toByteArray()).next());
+    }
+
+    @Test
+    public void testLengthPrefixedNegativeLength() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new DataOutputStream(stream).writeInt(-1);
+
+        assertThrows(IOException.class, () -> lengthPrefixed(stream.toByteArray()).next());
+    }
+
+    @Test
+    public void testLengthPrefixedTruncatedFrame() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(4);
+        out.write(new byte[]{1, 2});
+
+        assertThrows(IOException.class, () -> lengthPrefixed(stream.toByteArray()).next());
+    }
+
+    @Test
+    public void testMjpegWithContentLength() throws IOException {
+        String stream = "preamble\r\n"
+                + "--frame\r\nContent-Type: image/jpeg\r\nContent-Length: 4\r\n\r\nabcd\r\n"
+                + "--frame\r\ncontent-length: 2\r\n\r\nef\r\n"
+                + "--frame--\r\n";
+
+        FrameStreamReader reader = mjpeg(stream, "frame");
+
+        assertEquals("abcd", next(reader));
+        assertEquals("ef", next(reader));
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testMjpegScannedForBoundary() throws IOException {
+        // The second frame holds bytes that start the delimiter without completing it
+        String stream = "--frame\r\nContent-Type: image/jpeg\r\n\r\nabcd\r\n"
+                + "--frame\r\nContent-Type: image/jpeg\r\n\r\nx\r\n-y\r\n--fr\r\r\n--frame\r\n"
+                + "Content-Type: image/jpeg\r\n\r\nlast\r\n--frame--";
+
+        FrameStreamReader reader = mjpeg(stream, "--frame");
+
+        assertEquals("abcd", next(reader));
+        assertEquals("x\r\n-y\r\n--fr\r", next(reader));
+        assertEquals("last", next(reader));
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testMjpegEndingWithoutClosingBoundary() throws IOException {
+        FrameStreamReader reader = mjpeg("--frame\r\n\r\nabcd", "frame");
+
+        assertEquals("abcd", next(reader));
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testMjpegFrameTooLarge() {
+        String stream = "--frame\r\nContent-Length: " + (MAX_FRAME_BYTES + 1) + "\r\n\r\n";
+
+        assertThrows(IOException.class, () -> mjpeg(stream, "frame").next());
+    }
+
+    @Test
+    public void testMjpegScannedFrameTooLarge() {
+        StringBuilder stream = new StringBuilder("--frame\r\n\r\n");
+        for (int i = 0; i <= MAX_FRAME_BYTES; i++) {
+            stream.append('x');
+        }
+
+        assertThrows(IOException.class, () -> mjpeg(stream.toString(), "frame").next());
+    }
+
+    @Test
+    public void testMjpegWithoutBoundary() {
+        assertThrows(IOException.class, () -> FrameStreamReader.create(FrameStreamReader.MJPEG, null,
+                new ByteArrayInputStream(new byte[0]), MAX_FRAME_BYTES));
+    }
+
+    private static FrameStreamReader lengthPrefixed(byte[] stream) throws IOException {
+        return FrameStreamReader.create(FrameStreamReader.LENGTH_PREFIXED, null, new ByteArrayInputStream(stream),
+                MAX_FRAME_BYTES);
+    }
+
+    private static FrameStreamReader mjpeg(String stream, String boundary) throws IOException {
+        return FrameStreamReader.create(FrameStreamReader.MJPEG, boundary,
+                new ByteArrayInputStream(stream.getBytes(StandardCharsets.US_ASCII)), MAX_FRAME_BYTES);
+    }
+
+    private static String next(FrameStreamReader reader) throws IOException {
+        byte[] frame = reader.next();
+        return frame != null ? new String(frame, StandardCharsets.US_ASCII) : null;
+    }
+}
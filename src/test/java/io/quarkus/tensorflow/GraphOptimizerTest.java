@@ -0,0 +1,153 @@
+package io.quarkus.tensorflow;
+
+import org.junit.jupiter.api.Test;
+import org.tensorflow.framework.GraphDef;
+import org.tensorflow.framework.NodeDef;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GraphOptimizerTest {
+
+    @Test
+    public void testPassThroughOpsAreBypassed() {
+        GraphDef graph = graph(
+                node("image_tensor", "Placeholder"),
+                node("split", "Split", "image_tensor"),
+                node("check", "CheckNumerics", "split:1"),
+                node("stop", "StopGradient", "check"),
+                node("init", "NoOp"),
+                node("after_init", "Identity", "init"),
+                node("guard", "StopGradient", "after_init"),
+                node("output", "Add", "stop:0", "split", "^guard"));
+
+        Map<String, NodeDef> nodes = optimize(graph, "output");
+
+        assertEquals(Arrays.asList("image_tensor", "split", "init", "after_init", "output"),
+                new ArrayList<>(nodes.keySet()));
+        // Output 1 of the bypassed node's input is kept, and the control dependency moves to the node it passed through
+        assertEquals(Arrays.asList("split:1", "split", "^after_init"), nodes.get("output").getInputList());
+    }
+
+    @Test
+    public void testRedundantControlDependenciesAreDropped() {
+        GraphDef graph = graph(
+                node("image_tensor", "Placeholder"),
+                node("check", "CheckNumerics", "image_tensor"),
+                node("output", "Identity", "image_tensor", "^check"));
+
+        Map<String, NodeDef> nodes = optimize(graph, "output");
+
+        assertEquals(Collections.singletonList("image_tensor"), nodes.get("output").getInputList());
+    }
+
+    @Test
+    public void testAssertAndPrintControlDependenciesAreDropped() {
+        GraphDef graph = graph(
+                node("image_tensor", "Placeholder"),
+                node("condition", "Const"),
+                node("assert", "Assert", "condition", "image_tensor"),
+                node("print", "PrintV2", "image_tensor"),
+                node("output", "Identity", "image_tensor", "^assert", "^print"));
+
+        Map<String, NodeDef> nodes = optimize(graph, "output");
+
+        assertEquals(Arrays.asList("image_tensor", "output"), new ArrayList<>(nodes.keySet()));
+        assertEquals(Collections.singletonList("image_tensor"), nodes.get("output").getInputList());
+    }
+
+    @Test
+    public void testUnreachableWhileLoopIsPruned() {
+        GraphDef graph = graph(
+                node("image_tensor", "Placeholder"),
+                node("output", "Identity", "image_tensor"),
+                node("start", "Const"),
+                node("enter", "Enter", "start"),
+                node("merge", "Merge", "enter", "next"),
+                node("add", "Add", "merge", "start"),
+                node("next", "NextIteration", "add"),
+                node("exit", "Exit", "merge"));
+
+        Map<String, NodeDef> nodes = optimize(graph, "output");
+
+        assertEquals(Arrays.asList("image_tensor", "output"), new ArrayList<>(nodes.keySet()));
+    }
+
+    @Test
+    public void testReachableWhileLoopIsKept() {
+        GraphDef graph = graph(
+                node("image_tensor", "Placeholder"),
+                node("enter", "Enter", "image_tensor"),
+                node("merge", "Merge", "enter", "next"),
+                node("add", "Add", "merge", "merge"),
+                node("next", "NextIteration", "add"),
+                node("output", "Exit", "merge"));
+
+        Map<String, NodeDef> nodes = optimize(graph, "output");
+
+        assertEquals(6, nodes.size());
+    }
+
+    @Test
+    public void testConstantReadOnceIsFolded() {
+        GraphDef graph = graph(
+                node("image_tensor", "Placeholder"),
+                node("weights", "Const"),
+                node("weights/read", "Identity", "weights"),
+                node("output", "Mul", "image_tensor", "weights/read"));
+
+        Map<String, NodeDef> nodes = optimize(graph, "output");
+
+        assertEquals(Arrays.asList("image_tensor", "weights/read", "output"), new ArrayList<>(nodes.keySet()));
+        assertEquals("Const", nodes.get("weights/read").getOp());
+        assertEquals(0, nodes.get("weights/read").getInputCount());
+    }
+
+    @Test
+    public void testConstantWithSeveralReadersIsNotFolded() {
+        GraphDef graph = graph(
+                node("image_tensor", "Placeholder"),
+                node("weights", "Const"),
+                node("weights/read", "Identity", "weights"),
+                node("scale", "Mul", "image_tensor", "weights/read"),
+                node("output", "Add", "scale", "weights"));
+
+        Map<String, NodeDef> nodes = optimize(graph, "output");
+
+        assertEquals("Const", nodes.get("weights").getOp());
+        assertEquals("Identity", nodes.get("weights/read").getOp());
+        assertEquals(Collections.singletonList("weights"), nodes.get("weights/read").getInputList());
+    }
+
+    @Test
+    public void testInputNodeIsKept() {
+        GraphDef graph = graph(
+                node("image_tensor", "Placeholder"),
+                node("check", "CheckNumerics", "image_tensor"),
+                node("output", "Identity", "check"),
+                node("train", "ApplyGradientDescent", "output"));
+
+        Map<String, NodeDef> nodes = optimize(graph, "output");
+
+        assertTrue(nodes.containsKey(DetectionBatcher.INPUT_NODE));
+        assertEquals(Collections.singletonList(DetectionBatcher.INPUT_NODE), nodes.get("output").getInputList());
+        assertFalse(nodes.containsKey("train"));
+    }
+
+    private static Map<String, NodeDef> optimize(GraphDef graph, String... outputs) {
+        Map<String, NodeDef> nodes = new LinkedHashMap<>();
+        for (NodeDef node : GraphOptimizer.optimize(graph, Arrays.asList(outputs)).getNodeList()) {
+            nodes.put(node.getName(), node);
+        }
+        return nodes;
+    }
+
+    private static GraphDef graph(NodeDef... nodes) {
+        return GraphDef.newBuilder().addAllNode(Arrays.asList(nodes)).build();
+    }
+
+    private static NodeDef node(String name, String op, String... inputs) {
+        return NodeDef.newBuilder().setName(name).setOp(op).addAllInput(Arrays.asList(inputs)).build();
+    }
+}
@@ -0,0 +1,85 @@
+package io.quarkus.tensorflow;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageHeaderTest {
+
+    @Test
+    public void testJpeg() throws Exception {
+        ImageHeader header = ImageHeader.read(encode("jpeg", BufferedImage.TYPE_INT_RGB, 40, 30));
+
+        assertEquals(ImageHeader.JPEG, header.getFormat());
+        assertEquals("image/jpeg", header.getMediaType());
+        assertEquals(40, header.getWidth());
+        assertEquals(30, header.getHeight());
+    }
+
+    @Test
+    public void testJpegWithFillBytesBeforeFrameHeader() throws Exception {
+        byte[] jpeg = {
+                (byte) 0xFF, (byte) 0xD8,
+                // APP0 segment of 4 bytes, length included
+                (byte) 0xFF, (byte) 0xE0, 0, 4, 0, 0,
+                // Fill bytes, then a baseline start of frame: precision, height 600, width 800
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, 0, 17, 8, 0x02, 0x58, 0x03, 0x20};
+
+        ImageHeader header = ImageHeader.read(jpeg);
+
+        assertEquals(800, header.getWidth());
+        assertEquals(600, header.getHeight());
+    }
+
+    @Test
+    public void testPng() throws Exception {
+        ImageHeader header = ImageHeader.read(encode("png", BufferedImage.TYPE_INT_ARGB, 17, 9));
+
+        assertEquals(ImageHeader.PNG, header.getFormat());
+        assertEquals("image/png", header.getMediaType());
+        assertEquals(17, header.getWidth());
+        assertEquals(9, header.getHeight());
+    }
+
+    @Test
+    public void testGif() throws Exception {
+        ImageHeader header = ImageHeader.read(encode("gif", BufferedImage.TYPE_BYTE_INDEXED, 300, 2));
+
+        assertEquals(ImageHeader.GIF, header.getFormat());
+        assertEquals("image/gif", header.getMediaType());
+        assertEquals(300, header.getWidth());
+        assertEquals(2, header.getHeight());
+    }
+
+    @Test
+    public void testUnsupportedFormat() {
+        assertThrows(MediaTypeException.class, () -> ImageHeader.read("BM not an image".getBytes()));
+        assertThrows(MediaTypeException.class, () -> ImageHeader.read(new byte[0]));
+    }
+
+    @Test
+    public void testTruncatedJpeg() throws Exception {
+        byte[] jpeg = encode("jpeg", BufferedImage.TYPE_INT_RGB, 40, 30);
+
+        assertThrows(IOException.class, () -> ImageHeader.read(Arrays.copyOf(jpeg, 8)));
+    }
+
+    @Test
+    public void testMalformedJpegMarker() {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 4, 0, 0, 0x12, 0x34, 0, 0};
+
+        assertThrows(IOException.class, () -> ImageHeader.read(jpeg));
+    }
+
+    private static byte[] encode(String format, int type, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(new BufferedImage(width, height, type), format, out));
+        return out.toByteArray();
+    }
+}
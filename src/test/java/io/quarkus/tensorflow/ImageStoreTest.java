@@ -0,0 +1,110 @@
+package io.quarkus.tensorflow;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageStoreTest {
+
+    private final MetricRegistry metricRegistry = new MetricsRegistryImpl();
+    private ImageStore store;
+
+    @AfterEach
+    public void stop() {
+        store.stop();
+    }
+
+    @Test
+    public void testImageIsCopiedOffHeap() {
+        store = store(1, 60);
+        byte[] data = {1, 2, 3};
+
+        store.put("a", data, "image/png");
+        data[0] = 9;
+
+        ImageStore.StoredImage image = store.get("a");
+        ByteBuffer stored = image.getData();
+        assertTrue(stored.isDirect());
+        assertTrue(stored.isReadOnly());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), stored);
+        assertEquals("image/png", image.getMediaType());
+        assertNull(store.get("b"));
+        assertNull(store.get(null));
+    }
+
+    @Test
+    public void testExpiredImagesAreNotReturned() throws InterruptedException {
+        store = store(1, 1);
+        store.put("a", new byte[10], "image/jpeg");
+        assertNotNull(store.get("a"));
+
+        TimeUnit.MILLISECONDS.sleep(1100);
+
+        assertNull(store.get("a"));
+    }
+
+    @Test
+    public void testOldestImagesAreEvictedOverTheByteLimit() {
+        store = store(1, 60);
+        store.put("a", new byte[400 * 1024], "image/jpeg");
+        store.put("b", new byte[400 * 1024], "image/jpeg");
+        store.put("c", new byte[400 * 1024], "image/jpeg");
+
+        assertNull(store.get("a"));
+        assertNotNull(store.get("b"));
+        assertNotNull(store.get("c"));
+        assertEquals(800 * 1024, storedBytes());
+        assertEquals(1, evictions());
+    }
+
+    @Test
+    public void testImageLargerThanTheStoreIsNotKept() {
+        store = store(1, 60);
+        store.put("a", new byte[10], "image/jpeg");
+
+        store.put("b", new byte[1024 * 1024 + 1], "image/jpeg");
+
+        assertNull(store.get("b"));
+        assertNotNull(store.get("a"));
+        assertEquals(10, storedBytes());
+    }
+
+    @Test
+    public void testSweeperFreesExpiredImagesWithoutNewUploads() throws InterruptedException {
+        store = store(1, 1);
+        store.put("a", new byte[10], "image/jpeg");
+
+        // The sweep runs every second, the image expires after one
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (storedBytes() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+
+        assertEquals(0, storedBytes());
+        assertEquals(1, evictions());
+    }
+
+    private ImageStore store(long maxMb, long ttlSeconds) {
+        ImageStore imageStore = new ImageStore();
+        imageStore.maxMb = maxMb;
+        imageStore.ttlSeconds = ttlSeconds;
+        imageStore.metricRegistry = metricRegistry;
+        imageStore.start();
+        return imageStore;
+    }
+
+    private long storedBytes() {
+        return (Long) metricRegistry.getGauges().get(new MetricID("image-store.bytes")).getValue();
+    }
+
+    private long evictions() {
+        return metricRegistry.getCounters().get(new MetricID("image-store.evictions")).getCount();
+    }
+}
@@ -0,0 +1,55 @@
+package io.quarkus.tensorflow;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+public class ModelRegistryTest {
+
+    @Inject
+    ModelRegistry modelRegistry;
+
+    @Test
+    public void testDefaultModelIsRegistered() {
+        assertTrue(modelRegistry.getNames().contains(ModelRegistry.DEFAULT_MODEL));
+    }
+
+    @Test
+    public void testUnknownModel() {
+        assertFalse(modelRegistry.isReady("unknown"));
+        assertNull(modelRegistry.acquire("unknown"));
+        assertThrows(IllegalArgumentException.class, () -> modelRegistry.reload("unknown"));
+    }
+
+    @Test
+    public void testKeyOfDefaultVariantIsTheModelName() {
+        assertEquals("default", ModelRegistry.key("default", ModelRegistry.DEFAULT_VARIANT));
+        assertEquals("default:int8", ModelRegistry.key("default", "int8"));
+    }
+
+    @Test
+    public void testModelAndVariantOfKey() {
+        assertEquals("default", ModelRegistry.modelOf("default"));
+        assertEquals(ModelRegistry.DEFAULT_VARIANT, ModelRegistry.variantOf("default"));
+        assertEquals("ssd-mobilenet", ModelRegistry.modelOf("ssd-mobilenet:int8"));
+        assertEquals("int8", ModelRegistry.variantOf("ssd-mobilenet:int8"));
+    }
+
+    @Test
+    public void testResolve() {
+        assertEquals("default", modelRegistry.resolve(ModelRegistry.DEFAULT_MODEL, null));
+        assertEquals("default", modelRegistry.resolve(ModelRegistry.DEFAULT_MODEL, ""));
+        assertEquals("default", modelRegistry.resolve(ModelRegistry.DEFAULT_MODEL, ModelRegistry.DEFAULT_VARIANT));
+    }
+
+    @Test
+    public void testResolveUnknownModelOrVariant() {
+        assertNull(modelRegistry.resolve("unknown", null));
+        assertNull(modelRegistry.resolve("unknown", ModelRegistry.DEFAULT_VARIANT));
+        assertNull(modelRegistry.resolve(ModelRegistry.DEFAULT_MODEL, "int4"));
+    }
+}
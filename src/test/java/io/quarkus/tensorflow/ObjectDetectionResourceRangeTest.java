@@ -0,0 +1,52 @@
+package io.quarkus.tensorflow;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObjectDetectionResourceRangeTest {
+
+    private static final int LENGTH = 1000;
+
+    @Test
+    public void testNoRange() {
+        assertNull(ObjectDetectionResource.parseRange(null, LENGTH));
+    }
+
+    @Test
+    public void testFirstToLast() {
+        assertArrayEquals(new long[]{0, 499}, ObjectDetectionResource.parseRange("bytes=0-499", LENGTH));
+        assertArrayEquals(new long[]{500, 999}, ObjectDetectionResource.parseRange("bytes=500-999", LENGTH));
+    }
+
+    @Test
+    public void testLastClampedToLength() {
+        assertArrayEquals(new long[]{900, 999}, ObjectDetectionResource.parseRange("bytes=900-5000", LENGTH));
+    }
+
+    @Test
+    public void testOpenEnded() {
+        assertArrayEquals(new long[]{100, 999}, ObjectDetectionResource.parseRange("bytes=100-", LENGTH));
+    }
+
+    @Test
+    public void testSuffix() {
+        assertArrayEquals(new long[]{900, 999}, ObjectDetectionResource.parseRange("bytes=-100", LENGTH));
+        assertArrayEquals(new long[]{0, 999}, ObjectDetectionResource.parseRange("bytes=-5000", LENGTH));
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        assertEquals(0, ObjectDetectionResource.parseRange("bytes=1000-", LENGTH).length);
+        assertEquals(0, ObjectDetectionResource.parseRange("bytes=500-400", LENGTH).length);
+        assertEquals(0, ObjectDetectionResource.parseRange("bytes=-0", LENGTH).length);
+    }
+
+    @Test
+    public void testIgnored() {
+        assertNull(ObjectDetectionResource.parseRange("items=0-10", LENGTH));
+        assertNull(ObjectDetectionResource.parseRange("bytes=0-10,20-30", LENGTH));
+        assertNull(ObjectDetectionResource.parseRange("bytes=a-b", LENGTH));
+        assertNull(ObjectDetectionResource.parseRange("bytes=10", LENGTH));
+    }
+}
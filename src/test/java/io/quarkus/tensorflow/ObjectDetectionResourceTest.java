@@ -5,9 +5,38 @@ import org.junit.jupiter.api.Test;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 
 @QuarkusTest
 public class ObjectDetectionResourceTest {
 
+    @Test
+    public void testUploadLargerThanLimitIsRejected() {
+        given().contentType("image/jpeg")
+                .body(new byte[2 * 1024 * 1024])
+                .when().post("/object/detect/65")
+                .then().statusCode(413);
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void testBulkUploadIsNotLimitedToUploadSize() {
+        given().contentType("application/zip")
+                .body(new byte[2 * 1024 * 1024])
+                .when().post("/object/detect/65/bulk")
+                .then().statusCode(not(is(413)));
+    }
+
+    @Test
+    public void testGraphComparisonIsDisabledByDefault() {
+        given().contentType("image/jpeg")
+                .body(new byte[16])
+                .when().post("/object/models/default/compare/65")
+                .then().statusCode(404);
+    }
+
+    @Test
+    public void testReloadIsDisabledByDefault() {
+        given().when().post("/object/models/default/reload")
+                .then().statusCode(404);
+    }
+}
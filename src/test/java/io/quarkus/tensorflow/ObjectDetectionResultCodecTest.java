@@ -0,0 +1,87 @@
+package io.quarkus.tensorflow;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObjectDetectionResultCodecTest {
+
+    private final ObjectDetectionResultCodec codec = new ObjectDetectionResultCodec();
+
+    @Test
+    public void testRoundTrip() {
+        ObjectDetectionResultComplete result = new ObjectDetectionResultComplete();
+        result.setFileName("café.jpg");
+        result.setMediaType("image/jpeg");
+        result.setUuid("2d7f7a5e-7d0c-4b6b-9a51-0c0c3c6b1f35");
+        result.setModel("default");
+        result.setModelVariant("int8");
+        result.setModelVersion(3);
+        result.setWidth(1920);
+        result.setHeight(1080);
+        result.setInputWidth(640);
+        result.setInputHeight(360);
+        result.setThumbnail(true);
+        result.setResults(Arrays.asList(
+                new ObjectDetectionResult("dog", 0.9f, 0.1f, 0.2f, 0.3f, 0.4f),
+                new ObjectDetectionResult("traffic light", 0.5f, 0.5f, 0.6f, 0.7f, 0.8f)));
+
+        ObjectDetectionResultComplete decoded = roundTrip(result);
+
+        assertEquals(result.getFileName(), decoded.getFileName());
+        assertEquals(result.getMediaType(), decoded.getMediaType());
+        assertEquals(result.getUuid(), decoded.getUuid());
+        assertNull(decoded.getError());
+        assertEquals(result.getModel(), decoded.getModel());
+        assertEquals(result.getModelVariant(), decoded.getModelVariant());
+        assertEquals(3, decoded.getModelVersion());
+        assertEquals(1920, decoded.getWidth());
+        assertEquals(1080, decoded.getHeight());
+        assertEquals(640, decoded.getInputWidth());
+        assertEquals(360, decoded.getInputHeight());
+        assertTrue(decoded.isThumbnail());
+        assertEquals(2, decoded.getResults().size());
+        for (int i = 0; i < 2; i++) {
+            ObjectDetectionResult expected = result.getResults().get(i);
+            ObjectDetectionResult actual = decoded.getResults().get(i);
+            assertEquals(expected.getLabel(), actual.getLabel());
+            assertEquals(expected.getScore(), actual.getScore());
+            assertEquals(expected.getX1(), actual.getX1());
+            assertEquals(expected.getY1(), actual.getY1());
+            assertEquals(expected.getX2(), actual.getX2());
+            assertEquals(expected.getY2(), actual.getY2());
+        }
+    }
+
+    @Test
+    public void testRoundTripOfErrorResult() {
+        ObjectDetectionResultComplete result = new ObjectDetectionResultComplete();
+        result.setError("Error reading image data. Please try another file.");
+        result.setResults(null);
+
+        ObjectDetectionResultComplete decoded = roundTrip(result);
+
+        assertEquals(result.getError(), decoded.getError());
+        assertNull(decoded.getFileName());
+        assertNull(decoded.getUuid());
+        assertFalse(decoded.isThumbnail());
+        assertEquals(result.getResults(), decoded.getResults());
+    }
+
+    @Test
+    public void testLocalTransformPassesTheResultAsIs() {
+        ObjectDetectionResultComplete result = new ObjectDetectionResultComplete();
+
+        assertSame(result, codec.transform(result));
+    }
+
+    private ObjectDetectionResultComplete roundTrip(ObjectDetectionResultComplete result) {
+        // The event bus decodes from the position after its own header
+        Buffer buffer = Buffer.buffer().appendString("header");
+        codec.encodeToWire(buffer, result);
+        return codec.decodeFromWire("header".length(), buffer);
+    }
+}
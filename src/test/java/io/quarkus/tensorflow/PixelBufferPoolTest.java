@@ -0,0 +1,64 @@
+package io.quarkus.tensorflow;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PixelBufferPoolTest {
+
+    @Test
+    public void testBufferIsRoundedUpToPowerOfTwo() {
+        PixelBufferPool pool = new PixelBufferPool(1024 * 1024);
+
+        ByteBuffer small = pool.acquire(100);
+        ByteBuffer large = pool.acquire(300 * 300 * 3);
+
+        assertTrue(small.isDirect());
+        assertEquals(64 * 1024, small.capacity());
+        assertEquals(100, small.limit());
+        assertEquals(0, small.position());
+        assertEquals(512 * 1024, large.capacity());
+        assertEquals(300 * 300 * 3, large.limit());
+    }
+
+    @Test
+    public void testReleasedBufferIsReused() {
+        PixelBufferPool pool = new PixelBufferPool(1024 * 1024);
+        ByteBuffer buffer = pool.acquire(200 * 1000);
+        buffer.put((byte) 1);
+
+        pool.release(buffer);
+        assertEquals(256 * 1024, pool.getRetainedBytes());
+
+        ByteBuffer reused = pool.acquire(150 * 1000);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(150 * 1000, reused.limit());
+        assertEquals(0, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testRetainedBytesAreBounded() {
+        PixelBufferPool pool = new PixelBufferPool(100 * 1024);
+        ByteBuffer first = pool.acquire(64 * 1024);
+        ByteBuffer second = pool.acquire(64 * 1024);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(64 * 1024, pool.getRetainedBytes());
+        assertSame(first, pool.acquire(64 * 1024));
+        assertNotSame(second, pool.acquire(64 * 1024));
+    }
+
+    @Test
+    public void testForeignBufferIsNotRetained() {
+        PixelBufferPool pool = new PixelBufferPool(1024 * 1024);
+
+        pool.release(ByteBuffer.allocateDirect(100 * 1000));
+
+        assertEquals(0, pool.getRetainedBytes());
+    }
+}
@@ -0,0 +1,107 @@
+package io.quarkus.tensorflow;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PixelConverterTest {
+
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+
+    @Test
+    public void testIntRgb() {
+        assertConvertedLikeGetRgb(image(BufferedImage.TYPE_INT_RGB));
+    }
+
+    @Test
+    public void testIntArgb() {
+        assertConvertedLikeGetRgb(image(BufferedImage.TYPE_INT_ARGB));
+    }
+
+    @Test
+    public void testThreeByteBgr() {
+        assertConvertedLikeGetRgb(image(BufferedImage.TYPE_3BYTE_BGR));
+    }
+
+    @Test
+    public void testFourByteAbgr() {
+        assertConvertedLikeGetRgb(image(BufferedImage.TYPE_4BYTE_ABGR));
+    }
+
+    @Test
+    public void testOtherLayoutsFallBackToGetRgb() {
+        assertConvertedLikeGetRgb(image(BufferedImage.TYPE_USHORT_565_RGB));
+        assertConvertedLikeGetRgb(image(BufferedImage.TYPE_INT_RGB).getSubimage(1, 1, WIDTH - 2, HEIGHT - 2));
+    }
+
+    @Test
+    public void testGrayIsCopiedToEveryChannel() {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                img.getRaster().setSample(x, y, 0, x * 30 + y);
+            }
+        }
+
+        ByteBuffer rgb = convert(img);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int gray = x * 30 + y;
+                assertEquals(gray, rgb.get() & 0xFF);
+                assertEquals(gray, rgb.get() & 0xFF);
+                assertEquals(gray, rgb.get() & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void testWritesFromCurrentPosition() {
+        BufferedImage img = image(BufferedImage.TYPE_INT_RGB);
+        ByteBuffer dst = ByteBuffer.allocate(2 + WIDTH * HEIGHT * 3);
+        dst.position(2);
+
+        PixelConverter.toRgb(img, dst);
+
+        assertFalse(dst.hasRemaining());
+        assertEquals((byte) (img.getRGB(0, 0) >> 16), dst.get(2));
+    }
+
+    private static void assertConvertedLikeGetRgb(BufferedImage img) {
+        ByteBuffer rgb = convert(img);
+
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                int expected = img.getRGB(x, y);
+                assertEquals((expected >> 16) & 0xFF, rgb.get() & 0xFF, "red at " + x + "," + y);
+                assertEquals((expected >> 8) & 0xFF, rgb.get() & 0xFF, "green at " + x + "," + y);
+                assertEquals(expected & 0xFF, rgb.get() & 0xFF, "blue at " + x + "," + y);
+            }
+        }
+    }
+
+    private static ByteBuffer convert(BufferedImage img) {
+        ByteBuffer rgb = ByteBuffer.allocateDirect(img.getWidth() * img.getHeight() * 3);
+        PixelConverter.toRgb(img, rgb);
+        assertFalse(rgb.hasRemaining());
+        rgb.flip();
+        return rgb;
+    }
+
+    /**
+     * An image of the given type with a distinct, fully opaque color in every pixel.
+     */
+    private static BufferedImage image(int type) {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, type);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                img.setRGB(x, y, 0xFF000000 | (x * 36) << 16 | (y * 50) << 8 | (x * 10 + y * 20));
+            }
+        }
+        return img;
+    }
+}
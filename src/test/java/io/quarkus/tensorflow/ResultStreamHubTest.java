@@ -0,0 +1,171 @@
+package io.quarkus.tensorflow;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.smallrye.metrics.MetricsRegistryImpl;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.jboss.resteasy.plugins.providers.sse.SseImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultStreamHubTest {
+
+    private final Sse sse = new SseImpl();
+    private final MetricRegistry metricRegistry = new MetricsRegistryImpl();
+    private final AtomicInteger serialized = new AtomicInteger();
+    private ResultStreamHub hub;
+
+    @BeforeEach
+    public void createHub() {
+        hub = new ResultStreamHub();
+        hub.replaySize = 4;
+        hub.subscriberBuffer = 2;
+        hub.metricRegistry = metricRegistry;
+        hub.objectMapper = new ObjectMapper() {
+            @Override
+            public byte[] writeValueAsBytes(Object value) throws JsonProcessingException {
+                serialized.incrementAndGet();
+                return super.writeValueAsBytes(value);
+            }
+        };
+        hub.start();
+    }
+
+    @Test
+    public void testResultIsSerializedOncePerFilter() {
+        RecordingSink first = new RecordingSink(false);
+        RecordingSink second = new RecordingSink(false);
+        RecordingSink dogs = new RecordingSink(false);
+        hub.subscribe(first, sse, StreamFilter.NONE, null);
+        hub.subscribe(second, sse, StreamFilter.NONE, null);
+        hub.subscribe(dogs, sse, StreamFilter.of("dog", 0, 1), null);
+
+        hub.onResult(result("cat.jpg", "cat"));
+        hub.onResult(result("dog.jpg", "dog"));
+
+        assertEquals(3, serialized.get());
+        assertEquals(Arrays.asList("1", "2"), first.ids());
+        assertEquals(Arrays.asList("1", "2"), second.ids());
+        assertSame(first.sent.get(0).getData(), second.sent.get(0).getData());
+        // The cat is filtered out of the dog stream, it only keeps the dog
+        assertEquals(Collections.singletonList("2"), dogs.ids());
+    }
+
+    @Test
+    public void testSlowSubscriberDropsItsOldestEvents() {
+        RecordingSink slow = new RecordingSink(true);
+        RecordingSink fast = new RecordingSink(false);
+        hub.subscribe(slow, sse, StreamFilter.NONE, null);
+        hub.subscribe(fast, sse, StreamFilter.NONE, null);
+
+        for (int i = 0; i < 5; i++) {
+            hub.onResult(result(i + ".jpg", "dog"));
+        }
+
+        // The first event is still being written, the slow subscriber's queue only keeps the last two of the rest
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), fast.ids());
+        assertEquals(Collections.singletonList("1"), slow.ids());
+        assertEquals(2, metricRegistry.getCounters().get(new MetricID("stream.dropped")).getCount());
+
+        slow.completeAll();
+
+        assertEquals(Arrays.asList("1", "4", "5"), slow.ids());
+    }
+
+    @Test
+    public void testReconnectingSubscriberReceivesMissedEvents() {
+        for (int i = 0; i < 6; i++) {
+            hub.onResult(result(i + ".jpg", "dog"));
+        }
+        RecordingSink sink = new RecordingSink(false);
+
+        hub.subscribe(sink, sse, StreamFilter.NONE, "4");
+
+        assertEquals(Arrays.asList("5", "6"), sink.ids());
+    }
+
+    @Test
+    public void testClosedSubscriberIsRemoved() {
+        RecordingSink sink = new RecordingSink(false);
+        hub.subscribe(sink, sse, StreamFilter.NONE, null);
+        sink.close();
+
+        hub.onResult(result("dog.jpg", "dog"));
+        hub.onResult(result("dog.jpg", "dog"));
+
+        assertTrue(sink.sent.isEmpty());
+        assertEquals(0, metricRegistry.getGauges().get(new MetricID("stream.subscribers")).getValue());
+    }
+
+    private static ObjectDetectionResultComplete result(String fileName, String label) {
+        ObjectDetectionResultComplete result = new ObjectDetectionResultComplete();
+        result.setFileName(fileName);
+        result.setResults(Collections.singletonList(new ObjectDetectionResult(label, 0.9f, 0f, 0f, 1f, 1f)));
+        return result;
+    }
+
+    /**
+     * Records the events sent to it. A held sink leaves every send pending until completed by the test.
+     */
+    private static class RecordingSink implements SseEventSink {
+        private final boolean hold;
+        private final List<OutboundSseEvent> sent = new ArrayList<>();
+        private final List<CompletableFuture<Object>> pending = new ArrayList<>();
+        private boolean closed;
+
+        private RecordingSink(boolean hold) {
+            this.hold = hold;
+        }
+
+        @Override
+        public CompletionStage<?> send(OutboundSseEvent event) {
+            sent.add(event);
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            if (hold) {
+                pending.add(future);
+            }
+            else {
+                future.complete(null);
+            }
+            return future;
+        }
+
+        private void completeAll() {
+            while (!pending.isEmpty()) {
+                pending.remove(0).complete(null);
+            }
+        }
+
+        private List<String> ids() {
+            List<String> ids = new ArrayList<>();
+            for (OutboundSseEvent event : sent) {
+                ids.add(event.getId());
+            }
+            return ids;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
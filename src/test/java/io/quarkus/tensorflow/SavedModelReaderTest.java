@@ -0,0 +1,69 @@
+package io.quarkus.tensorflow;
+
+import org.junit.jupiter.api.Test;
+import org.tensorflow.framework.GraphDef;
+import org.tensorflow.framework.MetaGraphDef;
+import org.tensorflow.framework.NodeDef;
+import org.tensorflow.framework.SavedModel;
+import org.tensorflow.util.SaverDef;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SavedModelReaderTest {
+
+    @Test
+    public void testGraphDefOfFirstMetaGraphIsRead() throws IOException {
+        GraphDef first = graph("image_tensor");
+        SavedModel savedModel = SavedModel.newBuilder()
+                .setSavedModelSchemaVersion(1)
+                .addMetaGraphs(MetaGraphDef.newBuilder()
+                        .setMetaInfoDef(MetaGraphDef.MetaInfoDef.newBuilder().addTags("serve"))
+                        .setGraphDef(first)
+                        .setSaverDef(SaverDef.newBuilder().setFilenameTensorName("save/Const:0")))
+                .addMetaGraphs(MetaGraphDef.newBuilder().setGraphDef(graph("train")))
+                .build();
+
+        byte[] graphDef = SavedModelReader.readGraphDef(new ByteArrayInputStream(savedModel.toByteArray()));
+
+        assertArrayEquals(first.toByteArray(), graphDef);
+        assertEquals(first, GraphDef.parseFrom(graphDef));
+    }
+
+    @Test
+    public void testMissingGraphDefFails() {
+        SavedModel savedModel = SavedModel.newBuilder()
+                .setSavedModelSchemaVersion(1)
+                .addMetaGraphs(MetaGraphDef.newBuilder()
+                        .setMetaInfoDef(MetaGraphDef.MetaInfoDef.newBuilder().addTags("serve")))
+                .build();
+
+        assertThrows(IOException.class,
+                () -> SavedModelReader.readGraphDef(new ByteArrayInputStream(savedModel.toByteArray())));
+    }
+
+    @Test
+    public void testTruncatedFileFails() {
+        SavedModel savedModel = SavedModel.newBuilder()
+                .addMetaGraphs(MetaGraphDef.newBuilder().setGraphDef(graph("image_tensor")))
+                .build();
+        byte[] data = savedModel.toByteArray();
+
+        assertThrows(IOException.class, () -> SavedModelReader.readGraphDef(
+                new ByteArrayInputStream(Arrays.copyOf(data, data.length - 4))));
+    }
+
+    @Test
+    public void testEmptyFileFails() {
+        assertThrows(IOException.class, () -> SavedModelReader.readGraphDef(new ByteArrayInputStream(new byte[0])));
+    }
+
+    private static GraphDef graph(String nodeName) {
+        return GraphDef.newBuilder()
+                .addNode(NodeDef.newBuilder().setName(nodeName).setOp("Placeholder"))
+                .build();
+    }
+}
@@ -0,0 +1,66 @@
+package io.quarkus.tensorflow;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamFilterTest {
+
+    @Test
+    public void testNoFilter() {
+        assertSame(StreamFilter.NONE, StreamFilter.of(null, 0, 0));
+        assertSame(StreamFilter.NONE, StreamFilter.of(" , ", -5, -1));
+
+        ObjectDetectionResultComplete result = result();
+        assertSame(result, StreamFilter.NONE.apply(result));
+    }
+
+    @Test
+    public void testEqualFiltersAreShared() {
+        StreamFilter filter = StreamFilter.of("dog, cat", 50, 1);
+
+        assertEquals(filter, StreamFilter.of("cat,dog,cat", 50, 1));
+        assertEquals(filter.hashCode(), StreamFilter.of("cat,dog,cat", 50, 1).hashCode());
+        assertNotEquals(filter, StreamFilter.of("cat,dog", 60, 1));
+        assertNotEquals(filter, StreamFilter.of("cat", 50, 1));
+    }
+
+    @Test
+    public void testLabelsAndScoreAreFiltered() {
+        ObjectDetectionResultComplete result = result();
+
+        ObjectDetectionResultComplete filtered = StreamFilter.of("dog", 50, 0).apply(result);
+
+        assertNotSame(result, filtered);
+        assertEquals(1, filtered.getResults().size());
+        assertEquals("dog", filtered.getResults().get(0).getLabel());
+        assertEquals(result.getUuid(), filtered.getUuid());
+        // The original is left untouched, other subscribers may be sent it
+        assertEquals(3, result.getResults().size());
+    }
+
+    @Test
+    public void testResultWithoutEnoughObjectsIsDropped() {
+        assertNull(StreamFilter.of("cat", 0, 2).apply(result()));
+        assertNull(StreamFilter.of(null, 95, 1).apply(result()));
+    }
+
+    @Test
+    public void testResultMatchingEntirelyIsNotCopied() {
+        ObjectDetectionResultComplete result = result();
+
+        assertSame(result, StreamFilter.of("dog,cat", 10, 3).apply(result));
+    }
+
+    private static ObjectDetectionResultComplete result() {
+        ObjectDetectionResultComplete result = new ObjectDetectionResultComplete();
+        result.setUuid("uuid");
+        result.setResults(Arrays.asList(
+                new ObjectDetectionResult("dog", 0.9f, 0.1f, 0.1f, 0.5f, 0.5f),
+                new ObjectDetectionResult("cat", 0.6f, 0.2f, 0.2f, 0.4f, 0.4f),
+                new ObjectDetectionResult("dog", 0.3f, 0.6f, 0.6f, 0.9f, 0.9f)));
+        return result;
+    }
+}
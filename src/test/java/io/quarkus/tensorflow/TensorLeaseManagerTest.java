@@ -0,0 +1,117 @@
+package io.quarkus.tensorflow;
+
+import io.smallrye.metrics.MetricsRegistryImpl;
+import org.junit.jupiter.api.Test;
+import org.tensorflow.Tensor;
+import org.tensorflow.types.UInt8;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TensorLeaseManagerTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void testClosingTheLeaseReleasesItsTensors() throws NativeMemoryExceededException {
+        TensorLeaseManager manager = manager(1, "reject", 0);
+
+        Tensor<UInt8> tensor;
+        try (TensorLeaseManager.TensorLease lease = manager.lease()) {
+            tensor = create(lease, 1000);
+            lease.adopt(Collections.singletonList(Tensor.create(new float[]{1f, 2f})));
+            assertEquals(1008, manager.getNativeBytes());
+        }
+
+        assertEquals(0, manager.getNativeBytes());
+        // TensorFlow fails any use of a closed tensor
+        assertThrows(NullPointerException.class, tensor::numBytes);
+    }
+
+    @Test
+    public void testRejectPolicyFailsOnceTheBudgetIsExhausted() throws NativeMemoryExceededException {
+        TensorLeaseManager manager = manager(1, "reject", 0);
+
+        try (TensorLeaseManager.TensorLease lease = manager.lease()) {
+            create(lease, MB / 2);
+            try (TensorLeaseManager.TensorLease other = manager.lease()) {
+                assertThrows(NativeMemoryExceededException.class, () -> create(other, MB / 2 + 1));
+            }
+            assertEquals(MB / 2, manager.getNativeBytes());
+        }
+
+        try (TensorLeaseManager.TensorLease lease = manager.lease()) {
+            create(lease, MB);
+        }
+    }
+
+    @Test
+    public void testTensorLargerThanTheBudgetIsAlwaysRejected() {
+        TensorLeaseManager manager = manager(1, "block", 60000);
+
+        try (TensorLeaseManager.TensorLease lease = manager.lease()) {
+            assertThrows(NativeMemoryExceededException.class, () -> create(lease, MB + 1));
+        }
+        assertEquals(0, manager.getNativeBytes());
+    }
+
+    @Test
+    public void testBlockPolicyWaitsForMemoryToBeReleased() throws Exception {
+        TensorLeaseManager manager = manager(1, "block", 60000);
+        TensorLeaseManager.TensorLease lease = manager.lease();
+        create(lease, MB / 2);
+
+        CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> {
+            try (TensorLeaseManager.TensorLease other = manager.lease()) {
+                return create(other, MB / 2 + 1).numBytes();
+            }
+            catch (NativeMemoryExceededException e) {
+                throw new CompletionException(e);
+            }
+        });
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertFalse(waiting.isDone());
+
+        lease.close();
+
+        assertEquals(MB / 2 + 1, (int) waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBlockPolicyGivesUpAfterTheMaximumWait() throws NativeMemoryExceededException {
+        TensorLeaseManager manager = manager(1, "block", 100);
+
+        try (TensorLeaseManager.TensorLease lease = manager.lease();
+             TensorLeaseManager.TensorLease other = manager.lease()) {
+            create(lease, MB / 2);
+            long start = System.nanoTime();
+            assertThrows(NativeMemoryExceededException.class, () -> create(other, MB / 2 + 1));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    @Test
+    public void testUnknownPolicyIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> manager(1, "wait", 0));
+    }
+
+    private static Tensor<UInt8> create(TensorLeaseManager.TensorLease lease, int bytes)
+            throws NativeMemoryExceededException {
+        return lease.create(UInt8.class, new long[]{bytes}, ByteBuffer.allocateDirect(bytes));
+    }
+
+    private static TensorLeaseManager manager(long maxNativeMb, String budgetPolicy, long maxWaitMillis) {
+        TensorLeaseManager manager = new TensorLeaseManager();
+        manager.maxNativeMb = maxNativeMb;
+        manager.budgetPolicy = budgetPolicy;
+        manager.maxWaitMillis = maxWaitMillis;
+        manager.metricRegistry = new MetricsRegistryImpl();
+        manager.registerMetrics();
+        return manager;
+    }
+}